@@ -17,6 +17,10 @@ import androidx.preference.PreferenceManager;
 
 import org.lineageos.lineageparts.contributors.ContributorsCloudFragment;
 import org.lineageos.lineageparts.gestures.TouchscreenGestureSettings;
+import org.lineageos.lineageparts.health.ChargingControlSettings;
+import org.lineageos.lineageparts.livedisplay.LiveDisplaySettings;
+import org.lineageos.lineageparts.search.SearchIndexCache;
+import org.lineageos.lineageparts.utils.PartsExecutor;
 
 public class BootReceiver extends BroadcastReceiver {
 
@@ -34,10 +38,29 @@ public class BootReceiver extends BroadcastReceiver {
             setRestoredTunable(ctx);
         }
 
-        TouchscreenGestureSettings.restoreTouchscreenGestureStates(ctx);
+        // Restoring the gestures talks to the HAL and extracting the contributors database
+        // is disk heavy, so keep both off the main thread
+        final PendingResult pendingResult = goAsync();
+        PartsExecutor.executeCritical(PartsExecutor.Lane.IO, () -> {
+            try {
+                TouchscreenGestureSettings.restoreTouchscreenGestureStates(ctx);
+                ContributorsCloudFragment.extractContributorsCloudDatabase(ctx);
+                invalidateHardwareSearchData(ctx);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
 
-        // Extract the contributors database
-        ContributorsCloudFragment.extractContributorsCloudDatabase(ctx);
+    /**
+     * Search data of parts backed by hardware services may have been computed before
+     * those services were up, so have it computed again now.
+     */
+    private static void invalidateHardwareSearchData(Context context) {
+        for (Class<?> fragment : new Class<?>[] { TouchscreenGestureSettings.class,
+                LiveDisplaySettings.class, ChargingControlSettings.class }) {
+            SearchIndexCache.notifyFragmentChanged(context, fragment.getName());
+        }
     }
 
     private boolean hasRestoredTunable(Context context) {
@@ -0,0 +1,99 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Kusuma
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.lineageparts;
+
+import android.util.Log;
+
+import org.lineageos.lineageparts.PartsUpdater.Refreshable;
+import org.lineageos.lineageparts.search.Searchable;
+import org.lineageos.lineageparts.search.Searchable.SearchIndexProvider;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide registry of the static providers exposed by part fragments.
+ * <p>
+ * Parts publish their search metadata through a static SEARCH_INDEX_DATA_PROVIDER field
+ * and their summary through a static SUMMARY_PROVIDER field. Looking those up needs class
+ * loading and reflection, so each fragment class is only resolved once and the result,
+ * including the lack of any provider, is kept for the lifetime of the process.
+ */
+public final class PartProviderRegistry {
+
+    private static final String TAG = PartProviderRegistry.class.getSimpleName();
+
+    public static final String FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER =
+            "SEARCH_INDEX_DATA_PROVIDER";
+
+    private static final ConcurrentHashMap<String, Providers> sProviders =
+            new ConcurrentHashMap<>();
+
+    private static class Providers {
+        final SearchIndexProvider mSearchIndexProvider;
+        final Refreshable.SummaryProvider mSummaryProvider;
+
+        Providers(SearchIndexProvider searchIndexProvider,
+                Refreshable.SummaryProvider summaryProvider) {
+            mSearchIndexProvider = searchIndexProvider;
+            mSummaryProvider = summaryProvider;
+        }
+    }
+
+    private PartProviderRegistry() {
+    }
+
+    public static SearchIndexProvider getSearchIndexProvider(String className) {
+        return getProviders(className).mSearchIndexProvider;
+    }
+
+    public static Refreshable.SummaryProvider getSummaryProvider(String className) {
+        return getProviders(className).mSummaryProvider;
+    }
+
+    private static Providers getProviders(String className) {
+        if (className == null) {
+            return new Providers(null, null);
+        }
+        return sProviders.computeIfAbsent(className, PartProviderRegistry::resolve);
+    }
+
+    private static Providers resolve(String className) {
+        final Class<?> clazz;
+        try {
+            clazz = Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            Log.d(TAG, "Cannot find class: " + className);
+            return new Providers(null, null);
+        }
+
+        SearchIndexProvider searchIndexProvider = null;
+        if (Searchable.class.isAssignableFrom(clazz)) {
+            searchIndexProvider = (SearchIndexProvider) getStaticField(clazz,
+                    FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER, SearchIndexProvider.class);
+        }
+
+        Refreshable.SummaryProvider summaryProvider = null;
+        if (Refreshable.class.isAssignableFrom(clazz)) {
+            summaryProvider = (Refreshable.SummaryProvider) getStaticField(clazz,
+                    PartsUpdater.FIELD_NAME_SUMMARY_PROVIDER, Refreshable.SummaryProvider.class);
+        }
+
+        return new Providers(searchIndexProvider, summaryProvider);
+    }
+
+    private static Object getStaticField(Class<?> clazz, String name, Class<?> type) {
+        try {
+            final Field f = clazz.getField(name);
+            final Object value = f.get(null);
+            return type.isInstance(value) ? value : null;
+        } catch (NoSuchFieldException e) {
+            // Not every part provides everything
+        } catch (SecurityException | IllegalAccessException | IllegalArgumentException e) {
+            Log.e(TAG, "Cannot access field '" + name + "' of " + clazz.getName(), e);
+        }
+        return null;
+    }
+}
@@ -6,17 +6,20 @@
 package org.lineageos.lineageparts;
 
 import android.content.Context;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.ArrayMap;
 import android.util.Log;
 
 import lineageos.preference.PartInfo;
 import lineageos.preference.PartsList;
 
-import java.lang.reflect.Field;
-
 import lineageos.preference.RemotePreferenceUpdater;
 import lineageos.preference.SettingsHelper;
 
+import java.util.List;
+
 import static lineageos.preference.PartsList.EXTRA_PART;
 import static lineageos.preference.RemotePreference.EXTRA_KEY;
 import static lineageos.preference.RemotePreference.EXTRA_SUMMARY;
@@ -34,6 +37,12 @@ import static lineageos.preference.RemotePreference.EXTRA_SUMMARY;
  * <p>
  * Parts can also call refreshPart to send an asynchronous update to any
  * active remote components via broadcast.
+ * <p>
+ * Extras of parts whose summary provider implements
+ * {@link Refreshable.SummaryProvider#getSummaryUris} are reused for requests for the same
+ * key arriving within {@link #COALESCE_WINDOW_MS}, unless the part or one of those
+ * settings changed. Other providers can't tell when their summary goes stale, so their
+ * extras are computed again on every request.
  */
 public class PartsUpdater extends RemotePreferenceUpdater {
 
@@ -43,26 +52,18 @@ public class PartsUpdater extends RemotePreferenceUpdater {
 
     private static final boolean DEBUG = Log.isLoggable(TAG, Log.VERBOSE);
 
-    private Refreshable.SummaryProvider getPartSummary(PartInfo pi) {
-        final Class<?> clazz;
-        try {
-            clazz = Class.forName(pi.getFragmentClass());
-        } catch (ClassNotFoundException e) {
-            Log.d(TAG, "Cannot find class: " + pi.getFragmentClass());
-            return null;
-        }
+    private static final long COALESCE_WINDOW_MS = 1000;
 
-        if (!Refreshable.class.isAssignableFrom(clazz)) {
-            return null;
-        }
+    private static final ArrayMap<String, RecentExtras> sRecentExtras = new ArrayMap<>();
+
+    private static class RecentExtras {
+        final long mTime;
+        final Bundle mExtras;
 
-        try {
-            final Field f = clazz.getField(FIELD_NAME_SUMMARY_PROVIDER);
-            return (Refreshable.SummaryProvider) f.get(null);
-        } catch (Exception e) {
-            // ignore
+        RecentExtras(long time, Bundle extras) {
+            mTime = time;
+            mExtras = extras;
         }
-        return null;
     }
 
     @Override
@@ -73,23 +74,75 @@ public class PartsUpdater extends RemotePreferenceUpdater {
             return false;
         }
 
+        final Refreshable.SummaryProvider si =
+                PartProviderRegistry.getSummaryProvider(pi.getFragmentClass());
+        // Only summaries that get invalidated when their settings change can be reused
+        if (si == null || si.getSummaryUris() == null) {
+            computeResultExtras(context, key, pi, si, bundle);
+            return true;
+        }
+
+        final long now = SystemClock.elapsedRealtime();
+        synchronized (sRecentExtras) {
+            final RecentExtras recent = sRecentExtras.get(key);
+            if (recent != null && now - recent.mTime < COALESCE_WINDOW_MS) {
+                bundle.putAll(recent.mExtras);
+                return true;
+            }
+        }
+
+        final Bundle extras = new Bundle();
+        computeResultExtras(context, key, pi, si, extras);
+        synchronized (sRecentExtras) {
+            sRecentExtras.put(key, new RecentExtras(now, extras));
+        }
+        bundle.putAll(extras);
+        return true;
+    }
+
+    private void computeResultExtras(Context context, String key, PartInfo pi,
+            Refreshable.SummaryProvider si, Bundle bundle) {
         bundle.putString(EXTRA_KEY, key);
 
-        final Refreshable.SummaryProvider si = getPartSummary(pi);
         if (si != null) {
-            pi.setSummary(si.getSummary(context, key));
+            pi.setSummary(SummaryCache.get(context).getSummary(context, key, si));
             bundle.putString(EXTRA_SUMMARY, pi.getSummary());
         }
 
         if (DEBUG) Log.d(TAG, "fillResultExtras key=" + key + " part=" + pi);
 
         bundle.putParcelable(EXTRA_PART, pi);
-        return true;
+    }
+
+    /**
+     * Drops the extras kept for the given part and lets remote components know
+     * it changed. Parts must be notified through this method rather than
+     * {@link RemotePreferenceUpdater#notifyChanged}, which would leave the kept extras
+     * to be served until the coalescing window ends.
+     */
+    public static void notifyPartChanged(Context context, String key) {
+        dropRecentExtras(key);
+        RemotePreferenceUpdater.notifyChanged(context, key);
+    }
+
+    static void dropRecentExtras(String key) {
+        synchronized (sRecentExtras) {
+            sRecentExtras.remove(key);
+        }
     }
 
     public interface Refreshable extends SettingsHelper.OnSettingsChangeListener {
         interface SummaryProvider {
             String getSummary(Context context, String key);
+
+            /**
+             * Returns the settings the summary is computed from. Summaries of providers
+             * returning null are neither cached nor coalesced, and are computed again on
+             * every request.
+             */
+            default List<Uri> getSummaryUris() {
+                return null;
+            }
         }
     }
 }
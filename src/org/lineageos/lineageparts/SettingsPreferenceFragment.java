@@ -133,7 +133,7 @@ public abstract class SettingsPreferenceFragment extends ObservablePreferenceFra
 
     @Override
     public void onSettingsChanged(Uri contentUri) {
-        PartsUpdater.notifyChanged(getActivity(), getPreferenceScreen().getKey());
+        PartsUpdater.notifyPartChanged(getActivity(), getPreferenceScreen().getKey());
     }
 
     public void registerObserverIfNeeded() {
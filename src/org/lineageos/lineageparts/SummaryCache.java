@@ -0,0 +1,122 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Kusuma
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.lineageparts;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.LocaleList;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+import org.lineageos.lineageparts.PartsUpdater.Refreshable.SummaryProvider;
+
+import java.util.List;
+
+/**
+ * Keeps the summaries of parts whose provider declares the settings they depend on.
+ * <p>
+ * A single observer watches all those settings, and drops the summaries depending on
+ * a setting as soon as it changes. Summaries of other providers are never kept.
+ * Summaries are localized, so all of them are dropped when the locales change.
+ */
+final class SummaryCache {
+
+    private static final String TAG = SummaryCache.class.getSimpleName();
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static SummaryCache sInstance;
+
+    private final Context mContext;
+
+    private final ArrayMap<String, String> mSummaries = new ArrayMap<>();
+    private final ArrayMap<Uri, ArraySet<String>> mKeysByUri = new ArrayMap<>();
+
+    // Bumped on every invalidation, so summaries computed meanwhile are not kept
+    private int mGeneration;
+
+    // Locales the kept summaries were computed in
+    private LocaleList mLocales;
+
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            invalidate(uri);
+        }
+    };
+
+    static synchronized SummaryCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new SummaryCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SummaryCache(Context context) {
+        mContext = context;
+    }
+
+    String getSummary(Context context, String key, SummaryProvider provider) {
+        final List<Uri> uris = provider.getSummaryUris();
+        if (uris == null || uris.isEmpty()) {
+            return provider.getSummary(context, key);
+        }
+
+        final LocaleList locales = context.getResources().getConfiguration().getLocales();
+        final boolean localesChanged;
+        synchronized (this) {
+            localesChanged = mLocales != null && !mLocales.equals(locales);
+            mLocales = locales;
+        }
+        if (localesChanged) {
+            invalidate(null);
+        }
+
+        final int generation;
+        synchronized (this) {
+            if (mSummaries.containsKey(key)) {
+                return mSummaries.get(key);
+            }
+            // Start watching before reading, so changes happening meanwhile are not missed
+            for (Uri uri : uris) {
+                ArraySet<String> keys = mKeysByUri.get(uri);
+                if (keys == null) {
+                    keys = new ArraySet<>();
+                    mKeysByUri.put(uri, keys);
+                    mContext.getContentResolver().registerContentObserver(uri, false, mObserver);
+                }
+                keys.add(key);
+            }
+            generation = mGeneration;
+        }
+
+        final String summary = provider.getSummary(context, key);
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mSummaries.put(key, summary);
+            }
+        }
+        return summary;
+    }
+
+    private void invalidate(Uri uri) {
+        final ArraySet<String> keys = new ArraySet<>();
+        synchronized (this) {
+            mGeneration++;
+            if (uri == null) {
+                keys.addAll(mSummaries.keySet());
+            } else if (mKeysByUri.containsKey(uri)) {
+                keys.addAll(mKeysByUri.get(uri));
+            }
+            mSummaries.removeAll(keys);
+        }
+        for (String key : keys) {
+            if (DEBUG) Log.d(TAG, "Summary of " + key + " changed");
+            PartsUpdater.dropRecentExtras(key);
+        }
+    }
+}
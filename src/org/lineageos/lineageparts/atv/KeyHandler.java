@@ -5,25 +5,38 @@
 
 package org.lineageos.lineageparts.atv;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.provider.Settings;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.KeyEvent;
 
+import com.android.internal.os.BackgroundThread;
 import com.android.internal.os.DeviceKeyHandler;
 
-import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-
 public class KeyHandler implements DeviceKeyHandler {
     private static final String TAG = KeyHandler.class.getSimpleName();
-    private static Map<Integer, String> KEYMAP;
 
     private final Context mContext;
 
+    // Keycode to package name or intent action, never modified after construction
+    private final SparseArray<String> mKeymap = new SparseArray<>();
+
+    // Keycode to launch intent, null values meaning the target can't be launched.
+    // Rebuilt as a whole when packages change, null until first built.
+    private volatile SparseArray<Intent> mLaunchIntents;
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            resolveLaunchIntents();
+        }
+    };
+
     public KeyHandler(Context context) {
         mContext = context;
 
@@ -32,8 +45,21 @@ public class KeyHandler implements DeviceKeyHandler {
         String[] packages = mContext.getResources().getStringArray(
                 org.lineageos.platform.internal.R.array.keyhandler_packages);
 
-        KEYMAP = IntStream.range(0, keycodes.length).boxed()
-                .collect(Collectors.toMap(i -> keycodes[i], i -> packages[i]));
+        for (int i = 0; i < keycodes.length && i < packages.length; i++) {
+            mKeymap.put(keycodes[i], packages[i]);
+        }
+
+        if (mKeymap.size() > 0) {
+            final IntentFilter packageFilter = new IntentFilter();
+            packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+            packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+            packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+            packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+            packageFilter.addDataScheme("package");
+            mContext.registerReceiver(mPackageReceiver, packageFilter, null,
+                    BackgroundThread.getHandler(), Context.RECEIVER_NOT_EXPORTED);
+            BackgroundThread.getHandler().post(this::resolveLaunchIntents);
+        }
     }
 
     public KeyEvent handleKeyEvent(KeyEvent event) {
@@ -42,10 +68,10 @@ public class KeyHandler implements DeviceKeyHandler {
         }
 
         int keyCode = event.getKeyCode();
-        String targetName = KEYMAP.get(keyCode);
+        String targetName = mKeymap.get(keyCode);
 
         if (targetName != null) {
-            launchTarget(targetName);
+            launchTarget(keyCode, targetName);
             return null;
         }
 
@@ -57,7 +83,15 @@ public class KeyHandler implements DeviceKeyHandler {
                 Settings.Secure.TV_USER_SETUP_COMPLETE, 0) != 0;
     }
 
-    private void launchTarget(String targetName) {
+    private void resolveLaunchIntents() {
+        final SparseArray<Intent> launchIntents = new SparseArray<>(mKeymap.size());
+        for (int i = 0; i < mKeymap.size(); i++) {
+            launchIntents.put(mKeymap.keyAt(i), resolveTarget(mKeymap.valueAt(i)));
+        }
+        mLaunchIntents = launchIntents;
+    }
+
+    private Intent resolveTarget(String targetName) {
         PackageManager pm = mContext.getPackageManager();
 
         // First try to look the name up as a package
@@ -73,10 +107,22 @@ public class KeyHandler implements DeviceKeyHandler {
                 launchIntent = null;
             }
         }
+        return launchIntent;
+    }
+
+    private void launchTarget(int keyCode, String targetName) {
+        final SparseArray<Intent> launchIntents = mLaunchIntents;
+        final Intent launchIntent;
+        if (launchIntents != null && launchIntents.indexOfKey(keyCode) >= 0) {
+            launchIntent = launchIntents.get(keyCode);
+        } else {
+            // Not resolved yet
+            launchIntent = resolveTarget(targetName);
+        }
 
         // If something resolved, run it; otherwise log a warning
         if (launchIntent != null) {
-            mContext.startActivity(launchIntent);
+            mContext.startActivity(new Intent(launchIntent));
         } else {
             Log.w(TAG, "Cannot launch " + targetName + ": package/intent not found.");
         }
@@ -0,0 +1,422 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Kusuma
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.contributors;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+
+import org.lineageos.lineageparts.utils.PartsExecutor;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * Drawable that renders the contributors cloud as a pyramid of lazily rendered tiles.
+ *
+ * The drawable has a fixed intrinsic size of {@link #BASE_SIZE}. Level 0 of the pyramid
+ * renders the cloud at that size and every following level doubles the resolution. Only
+ * the tiles of the level matching the current zoom that intersect the viewport are
+ * rendered, so memory usage depends on the viewport size and not on the cloud size.
+ *
+ * Tiles only contain the unselected cloud. The selected contributor is drawn on top of them
+ * as an overlay, so changing the selection never invalidates the cached tiles.
+ */
+public class ContributorsCloudDrawable extends Drawable {
+
+    private static final String TAG = "ContributorsCloud";
+
+    static final int BASE_SIZE = 1024;
+
+    private static final int TILE_SIZE = 256;
+    private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+    private static final int MAX_LEVEL = 5;
+
+    // How much a level may be upscaled before switching to the next one
+    private static final float LEVEL_UPSCALE_TOLERANCE = 1.25f;
+
+    // Keep enough tiles for the visible level plus the one we are zooming from
+    private static final int MIN_CACHE_BYTES = 16 * TILE_BYTES;
+    private static final int VIEWPORT_CACHE_FACTOR = 2;
+    // Delay before tiles the render lane rejected are requested again
+    private static final long TILE_RETRY_DELAY_MS = 100;
+
+    static class Entry {
+        final int mId;
+        final String mName;
+        final float mX;
+        final float mY;
+        final int mRotation;
+        final float mTextSize;
+
+        float mWidth;
+        float mHeight;
+        final RectF mBounds = new RectF();
+
+        Entry(int id, String name, float x, float y, int rotation, float textSize) {
+            mId = id;
+            mName = name;
+            mX = x;
+            mY = y;
+            mRotation = rotation;
+            mTextSize = textSize;
+        }
+    }
+
+    private final Entry[] mEntries;
+    private final SparseArray<Entry> mEntriesById = new SparseArray<>();
+    private final int mForegroundColor;
+    private final int mSelectedColor;
+
+    private final Handler mHandler = PartsExecutor.getMainHandler();
+    private final Runnable mRetryRunnable = this::invalidateSelf;
+
+    private final LruCache<Long, Bitmap> mTiles = new LruCache<Long, Bitmap>(MIN_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Long key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+    private final Set<Long> mPendingTiles = new HashSet<>();
+
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mSelectedPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG);
+    private final RectF mDisplayRect = new RectF();
+    private final RectF mVisibleRect = new RectF();
+    private final RectF mTileRect = new RectF();
+    private final Rect mSrcRect = new Rect();
+    private final Rect mClipRect = new Rect();
+
+    private int mViewWidth;
+    private int mViewHeight;
+    private int mLevel;
+    private Entry mSelected;
+
+    // Bumped whenever the rendered content changes, so in-flight tiles can be discarded
+    private volatile int mGeneration;
+
+    // The tile window currently on screen, used to drop stale render requests
+    private volatile int mWantedLevel;
+    private volatile int mWantedLeft;
+    private volatile int mWantedTop;
+    private volatile int mWantedRight = -1;
+    private volatile int mWantedBottom = -1;
+
+    public ContributorsCloudDrawable(List<Entry> entries, int foregroundColor,
+            int selectedColor) {
+        mEntries = entries.toArray(new Entry[0]);
+        mForegroundColor = foregroundColor;
+        mSelectedColor = selectedColor;
+
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        Rect textBounds = new Rect();
+        Matrix matrix = new Matrix();
+        for (Entry entry : mEntries) {
+            measureEntry(entry, paint, textBounds, matrix);
+            mEntriesById.put(entry.mId, entry);
+        }
+    }
+
+    Entry getEntry(int id) {
+        return mEntriesById.get(id);
+    }
+
+    public void setSelectedContributor(int id) {
+        Entry selected = mEntriesById.get(id);
+        if (mSelected == selected) {
+            return;
+        }
+        mSelected = selected;
+        invalidateSelf();
+    }
+
+    /**
+     * Updates the viewport of the drawable.
+     *
+     * @param displayRect the drawable bounds mapped to the view coordinates
+     * @param viewWidth the width of the view showing the drawable
+     * @param viewHeight the height of the view showing the drawable
+     */
+    public void setViewport(RectF displayRect, int viewWidth, int viewHeight) {
+        mDisplayRect.set(displayRect);
+        mViewWidth = viewWidth;
+        mViewHeight = viewHeight;
+
+        float scale = displayRect.width() / BASE_SIZE;
+        int level = 0;
+        while (level < MAX_LEVEL && (1 << level) * LEVEL_UPSCALE_TOLERANCE < scale) {
+            level++;
+        }
+        mLevel = level;
+
+        // Enough tiles to cover the viewport twice, whatever the zoom level is
+        int cols = (int) Math.ceil(viewWidth * LEVEL_UPSCALE_TOLERANCE / TILE_SIZE) + 1;
+        int rows = (int) Math.ceil(viewHeight * LEVEL_UPSCALE_TOLERANCE / TILE_SIZE) + 1;
+        int budget = Math.max(MIN_CACHE_BYTES, cols * rows * TILE_BYTES * VIEWPORT_CACHE_FACTOR);
+        if (budget != mTiles.maxSize()) {
+            mTiles.resize(budget);
+        }
+    }
+
+    /**
+     * Drops all the cached tiles and discards the ones being rendered.
+     */
+    public void release() {
+        mGeneration++;
+        mHandler.removeCallbacks(mRetryRunnable);
+        mPendingTiles.clear();
+        mTiles.evictAll();
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (!computeVisibleRect(canvas)) {
+            return;
+        }
+
+        final int level = mLevel;
+        final int tilesPerSide = (BASE_SIZE << level) / TILE_SIZE;
+        final float tileExtent = (float) TILE_SIZE / (1 << level);
+        final int left = clamp((int) (mVisibleRect.left / tileExtent), tilesPerSide);
+        final int top = clamp((int) (mVisibleRect.top / tileExtent), tilesPerSide);
+        final int right = clamp((int) (mVisibleRect.right / tileExtent), tilesPerSide);
+        final int bottom = clamp((int) (mVisibleRect.bottom / tileExtent), tilesPerSide);
+
+        mWantedLevel = level;
+        mWantedLeft = left;
+        mWantedTop = top;
+        mWantedRight = right;
+        mWantedBottom = bottom;
+
+        for (int ty = top; ty <= bottom; ty++) {
+            for (int tx = left; tx <= right; tx++) {
+                mTileRect.set(tx * tileExtent, ty * tileExtent,
+                        (tx + 1) * tileExtent, (ty + 1) * tileExtent);
+                Bitmap tile = mTiles.get(tileKey(level, tx, ty));
+                if (tile != null) {
+                    canvas.drawBitmap(tile, null, mTileRect, mBitmapPaint);
+                } else {
+                    requestTile(level, tx, ty);
+                    drawFallbackTile(canvas, level, tx, ty);
+                }
+            }
+        }
+
+        // Paint the selected contributor over the cached tiles
+        final Entry selected = mSelected;
+        if (selected != null && RectF.intersects(selected.mBounds, mVisibleRect.left,
+                mVisibleRect.top, mVisibleRect.right, mVisibleRect.bottom)) {
+            mSelectedPaint.setColor(mSelectedColor);
+            mSelectedPaint.setAlpha(Color.alpha(mSelectedColor) * mBitmapPaint.getAlpha() / 255);
+            drawEntry(canvas, selected, mSelectedPaint);
+        }
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return BASE_SIZE;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return BASE_SIZE;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mBitmapPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mBitmapPaint.setColorFilter(colorFilter);
+        mSelectedPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    private boolean computeVisibleRect(Canvas canvas) {
+        if (mViewWidth > 0 && mViewHeight > 0 && mDisplayRect.width() > 0) {
+            float scale = mDisplayRect.width() / BASE_SIZE;
+            mVisibleRect.set(-mDisplayRect.left / scale, -mDisplayRect.top / scale,
+                    (mViewWidth - mDisplayRect.left) / scale,
+                    (mViewHeight - mDisplayRect.top) / scale);
+        } else if (canvas.getClipBounds(mClipRect)) {
+            mVisibleRect.set(mClipRect);
+        } else {
+            return false;
+        }
+        return mVisibleRect.intersect(0, 0, BASE_SIZE, BASE_SIZE);
+    }
+
+    private void drawFallbackTile(Canvas canvas, int level, int tx, int ty) {
+        // Stretch the nearest lower resolution tile we have until the real one is ready
+        for (int l = level - 1; l >= 0; l--) {
+            final int shift = level - l;
+            final int ptx = tx >> shift;
+            final int pty = ty >> shift;
+            Bitmap parent = mTiles.get(tileKey(l, ptx, pty));
+            if (parent != null) {
+                final int size = TILE_SIZE >> shift;
+                final int sx = (tx - (ptx << shift)) * size;
+                final int sy = (ty - (pty << shift)) * size;
+                mSrcRect.set(sx, sy, sx + size, sy + size);
+                canvas.drawBitmap(parent, mSrcRect, mTileRect, mBitmapPaint);
+                return;
+            }
+        }
+    }
+
+    private void requestTile(final int level, final int tx, final int ty) {
+        final long key = tileKey(level, tx, ty);
+        if (!mPendingTiles.add(key)) {
+            return;
+        }
+
+        final int generation = mGeneration;
+        Future<?> future = PartsExecutor.execute(PartsExecutor.Lane.UI, () -> {
+            Bitmap tile = null;
+            if (isTileWanted(level, tx, ty, generation)) {
+                try {
+                    tile = renderTile(level, tx, ty);
+                } catch (OutOfMemoryError ex) {
+                    Log.w(TAG, "Not enough memory to render tile " + level + "/"
+                            + tx + "/" + ty);
+                }
+            }
+            final Bitmap result = tile;
+            mHandler.post(() -> onTileRendered(key, generation, result));
+        });
+        if (future.isCancelled()) {
+            // The render lane is busy, redraw shortly so the missing tiles are requested
+            // again, even if the user doesn't pan
+            mPendingTiles.remove(key);
+            if (!mHandler.hasCallbacks(mRetryRunnable)) {
+                mHandler.postDelayed(mRetryRunnable, TILE_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    private void onTileRendered(long key, int generation, Bitmap tile) {
+        mPendingTiles.remove(key);
+        if (tile == null || generation != mGeneration) {
+            return;
+        }
+        mTiles.put(key, tile);
+        invalidateSelf();
+    }
+
+    private boolean isTileWanted(int level, int tx, int ty, int generation) {
+        return generation == mGeneration && level == mWantedLevel
+                && tx >= mWantedLeft && tx <= mWantedRight
+                && ty >= mWantedTop && ty <= mWantedBottom;
+    }
+
+    private Bitmap renderTile(int level, int tx, int ty) {
+        final float scale = 1 << level;
+        final float extent = TILE_SIZE / scale;
+        final float left = tx * extent;
+        final float top = ty * extent;
+        final float right = left + extent;
+        final float bottom = top + extent;
+
+        Bitmap bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.scale(scale, scale);
+        canvas.translate(-left, -top);
+
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG);
+        paint.setColor(mForegroundColor);
+        for (Entry entry : mEntries) {
+            if (RectF.intersects(entry.mBounds, left, top, right, bottom)) {
+                drawEntry(canvas, entry, paint);
+            }
+        }
+        return bitmap;
+    }
+
+    private static void drawEntry(Canvas canvas, Entry entry, Paint paint) {
+        paint.setTextSize(entry.mTextSize);
+        if (entry.mRotation == 0) {
+            // Horizontal
+            canvas.drawText(entry.mName, entry.mX, entry.mY, paint);
+        } else {
+            canvas.save();
+            applyRotation(canvas, null, entry);
+            canvas.drawText(entry.mName, entry.mX, entry.mY, paint);
+            canvas.restore();
+        }
+    }
+
+    private static void applyRotation(Canvas canvas, Matrix matrix, Entry entry) {
+        final float w = entry.mWidth;
+        final float h = entry.mHeight;
+        final float dx, dy, degrees;
+        if (entry.mRotation == -1) {
+            // Vertical (-90 rotation)
+            dx = h;
+            dy = w - h;
+            degrees = -90;
+        } else {
+            // Vertical (+90 rotation)
+            dx = h / 2;
+            dy = -h;
+            degrees = 90;
+        }
+        if (canvas != null) {
+            canvas.translate(dx, dy);
+            canvas.rotate(degrees, entry.mX, entry.mY);
+        } else {
+            matrix.setTranslate(dx, dy);
+            matrix.preRotate(degrees, entry.mX, entry.mY);
+        }
+    }
+
+    private static void measureEntry(Entry entry, Paint paint, Rect textBounds, Matrix matrix) {
+        paint.setTextSize(entry.mTextSize);
+        paint.getTextBounds(entry.mName, 0, entry.mName.length(), textBounds);
+        entry.mWidth = paint.measureText(entry.mName);
+        entry.mHeight = textBounds.height();
+
+        entry.mBounds.set(entry.mX + textBounds.left, entry.mY + textBounds.top,
+                entry.mX + Math.max(textBounds.right, entry.mWidth),
+                entry.mY + textBounds.bottom);
+        if (entry.mRotation != 0) {
+            applyRotation(null, matrix, entry);
+            matrix.mapRect(entry.mBounds);
+        }
+        // Leave some room for antialiasing
+        entry.mBounds.inset(-2, -2);
+    }
+
+    private static int clamp(int tile, int tilesPerSide) {
+        return Math.max(0, Math.min(tile, tilesPerSide - 1));
+    }
+
+    private static long tileKey(int level, int tx, int ty) {
+        return ((long) level << 48) | ((long) tx << 24) | ty;
+    }
+}
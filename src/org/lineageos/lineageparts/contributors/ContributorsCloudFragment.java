@@ -10,17 +10,13 @@ import android.animation.Animator;
 import android.animation.Animator.AnimatorListener;
 import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
-import android.app.ActivityManager;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -46,24 +42,30 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
+import androidx.preference.PreferenceManager;
 
 import org.lineageos.lineageparts.PartsActivity;
 import org.lineageos.lineageparts.R;
 import org.lineageos.lineageparts.search.BaseSearchIndexProvider;
+import org.lineageos.lineageparts.search.SearchIndexCache;
 import org.lineageos.lineageparts.search.SearchIndexableRaw;
 import org.lineageos.lineageparts.search.Searchable;
+import org.lineageos.lineageparts.utils.PartsExecutor;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class ContributorsCloudFragment extends Fragment implements SearchView.OnQueryTextListener,
         SearchView.OnCloseListener, MenuItem.OnActionExpandListener, Searchable {
@@ -71,6 +73,14 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     private static final String TAG = "ContributorsCloud";
 
     private static final String DB_NAME = "contributors.db";
+    private static final String SEARCH_TABLE = "metadata_search";
+
+    // Bump whenever the extracted database gets changes on top of the asset
+    private static final int DB_FORMAT_VERSION = 1;
+    private static final String PREF_DB_VERSION = "contributors_db_version";
+    private static final int EXTRACT_BUFFER_SIZE = 64 * 1024;
+
+    private static final long SEARCH_DELAY_MS = 150;
 
     private static final String STATE_SELECTED_CONTRIBUTOR = "state_selected_contributor";
 
@@ -82,8 +92,13 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     private ContributorsAdapter mSearchAdapter;
 
     private SQLiteDatabase mDatabase;
+    private ContributorsCloudDrawable mCloudDrawable;
+    private Future<ViewInfo> mLoaderFuture;
+    private Future<List<ContributorsDataHolder>> mSearchFuture;
+    private String mSearchQuery;
+    private Boolean mHasSearchIndex;
 
-    private int mTotalContributors;
+    private int mTotalContributors = -1;
     private int mTotalCommits;
     private long mLastUpdate;
 
@@ -99,10 +114,18 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
 
     private Handler mHandler;
 
+    private final Runnable mSearchRunnable = () -> {
+        final Context context = requireActivity();
+        final String query = mSearchQuery;
+        mSearchFuture = PartsExecutor.execute(getViewLifecycleOwner().getLifecycle(),
+                PartsExecutor.Lane.UI, () -> performFilter(context, query),
+                this::showSearchResults);
+    };
+
     private static final String KEY_PREFIX = "contributor_";
 
     private static class ViewInfo {
-        Bitmap mBitmap;
+        ContributorsCloudDrawable mDrawable;
         float mFocusX;
         float mFocusY;
     }
@@ -147,7 +170,6 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     }
 
     private class ContributorCloudLoaderTask {
-        private ViewInfo mViewInfo;
         private final boolean mNotify;
         private final boolean mNavigate;
 
@@ -159,45 +181,45 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         public void execute() {
             mLoadingView.setAlpha(1f);
 
-            ExecutorService executor = Executors.newSingleThreadExecutor();
-            Handler handler = new Handler(Looper.getMainLooper());
-            executor.execute(() -> {
-                Boolean result = Boolean.FALSE;
+            // Only the latest request matters
+            if (mLoaderFuture != null) {
+                mLoaderFuture.cancel(true);
+            }
+
+            final Context context = requireActivity();
+            final int selectedContributor = mSelectedContributor;
+            mLoaderFuture = PartsExecutor.execute(getViewLifecycleOwner().getLifecycle(),
+                    PartsExecutor.Lane.UI, () -> {
                 try {
-                    loadContributorsInfo(getActivity());
-                    loadUserInfo(getActivity());
-                    mViewInfo = generateViewInfo(requireActivity(), mSelectedContributor);
-                    if (mViewInfo != null && mViewInfo.mBitmap != null) {
-                        result = Boolean.TRUE;
+                    // The totals don't depend on the selection, load them only once
+                    if (mTotalContributors == -1) {
+                        loadContributorsInfo(context);
                     }
-
+                    loadUserInfo(context);
+                    return generateViewInfo(context, selectedContributor);
                 } catch (Exception ex) {
                     Log.e(TAG, "Failed to generate cloud bitmap", ex);
+                    return null;
                 }
-
-                final Boolean finalResult = result;
-                handler.post(() -> {
-                    if (finalResult) {
-                        mImageView.setImageBitmap(mViewInfo.mBitmap);
-                        mViewController.update();
-                        if (mNotify) {
-                            if (mNavigate) {
-                                onLoadCloudDataSuccess(mViewInfo.mFocusX, mViewInfo.mFocusY);
-                            } else {
-                                onLoadCloudDataSuccess(-1, -1);
-                            }
-                        }
-                    } else {
-                        mImageView.setImageBitmap(null);
-                        mViewController.update();
-                        if (mViewInfo != null && mViewInfo.mBitmap != null) {
-                            mViewInfo.mBitmap.recycle();
-                        }
-                        if (mNotify) {
-                            onLoadCloudDataFailed();
+            }, viewInfo -> {
+                if (viewInfo != null && viewInfo.mDrawable != null) {
+                    viewInfo.mDrawable.setSelectedContributor(selectedContributor);
+                    mImageView.setImageDrawable(viewInfo.mDrawable);
+                    mViewController.update();
+                    if (mNotify) {
+                        if (mNavigate) {
+                            onLoadCloudDataSuccess(viewInfo.mFocusX, viewInfo.mFocusY);
+                        } else {
+                            onLoadCloudDataSuccess(-1, -1);
                         }
                     }
-                });
+                } else {
+                    mImageView.setImageDrawable(null);
+                    mViewController.update();
+                    if (mNotify) {
+                        onLoadCloudDataFailed();
+                    }
+                }
             });
         }
     }
@@ -227,6 +249,18 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         }
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mHandler.removeCallbacks(mSearchRunnable);
+        synchronized (this) {
+            if (mCloudDrawable != null) {
+                mCloudDrawable.release();
+                mCloudDrawable = null;
+            }
+        }
+    }
+
     @Override
     public void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -301,6 +335,12 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         mViewController = new ContributorsCloudViewController(mImageView);
         mViewController.setMaximumScale(20f);
         mViewController.setMediumScale(7f);
+        mViewController.setOnMatrixChangeListener(rect -> {
+            if (mImageView.getDrawable() instanceof ContributorsCloudDrawable) {
+                ((ContributorsCloudDrawable) mImageView.getDrawable()).setViewport(
+                        rect, mImageView.getWidth(), mImageView.getHeight());
+            }
+        });
 
         mSearchResults = v.findViewById(R.id.contributors_cloud_search_results);
         mSearchAdapter = new ContributorsAdapter(getActivity());
@@ -367,14 +407,28 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
 
     @Override
     public boolean onQueryTextChange(String newText) {
-        List<ContributorsDataHolder> contributors = new ArrayList<>();
-        if (!TextUtils.isEmpty(newText) || newText.length() >= 3) {
-            contributors.addAll(performFilter(getActivity(), newText));
+        // Only search once the user stops typing, and drop any outdated search
+        mHandler.removeCallbacks(mSearchRunnable);
+        if (mSearchFuture != null) {
+            mSearchFuture.cancel(true);
+            mSearchFuture = null;
+        }
+
+        if (TextUtils.isEmpty(newText)) {
+            showSearchResults(null);
+        } else {
+            mSearchQuery = newText;
+            mHandler.postDelayed(mSearchRunnable, SEARCH_DELAY_MS);
         }
+        return true;
+    }
+
+    private void showSearchResults(List<ContributorsDataHolder> contributors) {
         mSearchAdapter.clear();
-        mSearchAdapter.addAll(contributors);
+        if (contributors != null) {
+            mSearchAdapter.addAll(contributors);
+        }
         mSearchAdapter.notifyDataSetChanged();
-        return true;
     }
 
     private void showMenuItems(boolean visible) {
@@ -454,9 +508,52 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     }
 
     private synchronized ViewInfo generateViewInfo(Context context, int selectedId) {
-        Bitmap bitmap = null;
         float focusX = -1, focusY = -1;
+
+        // The cloud is only loaded once, tiles are rendered on demand by the drawable
+        if (mCloudDrawable == null) {
+            mCloudDrawable = createCloudDrawable(context);
+            if (mCloudDrawable == null) {
+                return null;
+            }
+        }
+
+        // Calculate focus
+        ContributorsCloudDrawable.Entry selected = mCloudDrawable.getEntry(selectedId);
+        if (selected != null) {
+            final int bsize = ContributorsCloudDrawable.BASE_SIZE;
+            final float w = selected.mWidth;
+            final float h = selected.mHeight;
+            int iw = mImageView.getWidth();
+            int ih = mImageView.getHeight();
+            int cx = iw / 2;
+            int cy = ih / 2;
+            int cbx = bsize / 2;
+            int cby = bsize / 2;
+            float cw;
+            float ch;
+            if (selected.mRotation == 0) {
+                cw = translate(w, bsize, Math.min(iw, ih)) / 2;
+                ch = translate(h, bsize, Math.min(iw, ih)) / 2;
+            } else {
+                cw = translate(h, bsize, Math.min(iw, ih)) / 2;
+                ch = translate(w, bsize, Math.min(iw, ih)) / 2;
+            }
+
+            focusX = cx + translate(selected.mX - cbx, bsize, iw) + cw;
+            focusY = cy + translate(selected.mY - cby, bsize, ih) + ch;
+        }
+
+        ViewInfo viewInfo = new ViewInfo();
+        viewInfo.mDrawable = mCloudDrawable;
+        viewInfo.mFocusX = focusX;
+        viewInfo.mFocusY = focusY;
+        return viewInfo;
+    }
+
+    private ContributorsCloudDrawable createCloudDrawable(Context context) {
         final Resources res = context.getResources();
+        final int bsize = ContributorsCloudDrawable.BASE_SIZE;
 
         // Open the database
         SQLiteDatabase db = getDatabase(context, true);
@@ -480,24 +577,10 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
             // We don't have a valid cursor reference
             return null;
         }
+        List<ContributorsCloudDrawable.Entry> entries = new ArrayList<>();
         try {
-            TypedValue colorAccent = new TypedValue();
-            context.getTheme().resolveAttribute(com.android.internal.R.attr.colorAccent,
-                    colorAccent, true);
-            int colorForeground = res.getColor(colorAccent.resourceId, context.getTheme());
-            int colorSelected = res.getColor(R.color.contributors_cloud_selected_color,
-                    context.getTheme());
-            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG);
-
-            // Create a bitmap large enough to hold the cloud (use large bitmap when available)
-            int bsize = hasLargeHeap() ? 2048 : 1024;
-            bitmap = Bitmap.createBitmap(bsize, bsize, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-
-            // Draw every contributor name
             while (c.moveToNext()) {
                 int id = c.getInt(c.getColumnIndexOrThrow("id"));
-
                 String name = c.getString(c.getColumnIndexOrThrow("name"));
                 float x = translate(c.getFloat(c.getColumnIndexOrThrow("x")), osize, bsize);
                 float y = translate(c.getFloat(c.getColumnIndexOrThrow("y")), osize, bsize);
@@ -506,72 +589,19 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
                 if (id < 0) {
                     y -= translate(fs, osize, bsize);
                 }
-
-                // Choose the correct paint
-                paint.setColor(selectedId == id ? colorSelected : colorForeground);
-                paint.setTextSize(fs);
-
-                // Check text rotation
-                float w = 0f, h = 0f;
-                if (selectedId == id || r != 0) {
-                    Rect bounds = new Rect();
-                    paint.getTextBounds(name, 0, name.length(), bounds);
-                    h = bounds.height();
-                }
-                if (selectedId == id || r == -1) {
-                    w = paint.measureText(name);
-                }
-                if (r == 0) {
-                    // Horizontal
-                    canvas.drawText(name, x, y, paint);
-                } else {
-                    canvas.save();
-                    if (r == -1) {
-                        // Vertical (-90 rotation)
-                        canvas.translate(h, w - h);
-                        canvas.rotate(-90, x, y);
-                    } else {
-                        // Vertical (+90 rotation)
-                        canvas.translate(h/2, -h);
-                        canvas.rotate(90, x, y);
-                    }
-                    canvas.drawText(name, x, y, paint);
-                    canvas.restore();
-                }
-
-                // Calculate focus
-                if (selectedId == id) {
-                    int iw = mImageView.getWidth();
-                    int ih = mImageView.getHeight();
-                    int cx = iw / 2;
-                    int cy = ih / 2;
-                    int cbx = bsize / 2;
-                    int cby = bsize / 2;
-                    float cw;
-                    float ch;
-                    if (r == 0) {
-                        cw = translate(w, bsize, Math.min(iw, ih)) / 2;
-                        ch = translate(h, bsize, Math.min(iw, ih)) / 2;
-                    } else {
-                        cw = translate(h, bsize, Math.min(iw, ih)) / 2;
-                        ch = translate(w, bsize, Math.min(iw, ih)) / 2;
-                    }
-
-                    focusX = cx + translate(x - cbx, bsize, iw) + cw;
-                    focusY = cy + translate(y - cby, bsize, ih) + ch;
-                }
+                entries.add(new ContributorsCloudDrawable.Entry(id, name, x, y, r, fs));
             }
-
         } finally {
             c.close();
         }
 
-        // Return the bitmap
-        ViewInfo viewInfo = new ViewInfo();
-        viewInfo.mBitmap = bitmap;
-        viewInfo.mFocusX = focusX;
-        viewInfo.mFocusY = focusY;
-        return viewInfo;
+        TypedValue colorAccent = new TypedValue();
+        context.getTheme().resolveAttribute(com.android.internal.R.attr.colorAccent,
+                colorAccent, true);
+        int colorForeground = res.getColor(colorAccent.resourceId, context.getTheme());
+        int colorSelected = res.getColor(R.color.contributors_cloud_selected_color,
+                context.getTheme());
+        return new ContributorsCloudDrawable(entries, colorForeground, colorSelected);
     }
 
     private synchronized SQLiteDatabase getDatabase(Context context, boolean retryCopyIfOpenFails) {
@@ -593,7 +623,7 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
                 }
 
                 if (retryCopyIfOpenFails) {
-                    extractContributorsCloudDatabase(context);
+                    extractContributorsCloudDatabase(context, true);
                     mDatabase = getDatabase(context, false);
                 }
             }
@@ -709,11 +739,26 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
             return new ArrayList<>();
         }
 
-        // Total contributors
-        String[] args = new String[]{query.replaceAll("\\|", "")};
-        Cursor c = db.rawQuery("select id, name || case when username is null then '' " +
-                "else ' <'||username||'>' end contributor from metadata where lower(filter) like " +
-                "lower('%' || ? || '%') and id > 0 order by commits desc", args);
+        Cursor c;
+        String match = toSearchMatch(query);
+        if (match != null && hasSearchIndex(db)) {
+            // Matches on the start of the name or nick first, then most active contributors
+            String prefix = query.trim().replace("\\", "\\\\")
+                    .replace("%", "\\%").replace("_", "\\_");
+            String[] args = new String[]{match, prefix, prefix};
+            c = db.rawQuery("select m.id, m.name || case when m.username is null then '' " +
+                    "else ' <'||m.username||'>' end contributor from " + SEARCH_TABLE + " s " +
+                    "join metadata m on m.id = s.docid where " + SEARCH_TABLE + " match ? " +
+                    "order by case when m.name like ? || '%' escape '\\' " +
+                    "or m.username like ? || '%' escape '\\' then 0 else 1 end, " +
+                    "m.commits desc", args);
+        } else {
+            // Total contributors
+            String[] args = new String[]{query.replaceAll("\\|", "")};
+            c = db.rawQuery("select id, name || case when username is null then '' " +
+                    "else ' <'||username||'>' end contributor from metadata where lower(filter) " +
+                    "like lower('%' || ? || '%') and id > 0 order by commits desc", args);
+        }
         if (c == null) {
             // We don't have a valid cursor reference
             return new ArrayList<>();
@@ -729,6 +774,30 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         return results;
     }
 
+    private synchronized boolean hasSearchIndex(SQLiteDatabase db) {
+        if (mHasSearchIndex == null) {
+            try (Cursor c = db.rawQuery("select 1 from sqlite_master where type = 'table' " +
+                    "and name = ?;", new String[]{SEARCH_TABLE})) {
+                mHasSearchIndex = c.moveToFirst();
+            }
+        }
+        return mHasSearchIndex;
+    }
+
+    private static String toSearchMatch(String query) {
+        // Turn every word of the query into a prefix search, dropping the match operators
+        StringBuilder match = new StringBuilder();
+        for (String token : query.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(token).append('*');
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
     private void onContributorSelected(ContributorsDataHolder contributor) {
         onContributorSelected(contributor.mId);
     }
@@ -742,40 +811,130 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         }
     }
 
-    private boolean hasLargeHeap() {
-        ActivityManager am = requireActivity().getSystemService(ActivityManager.class);
-        return am.getMemoryClass() >= 96;
-    }
-
     private float translate(float v, int ssize, int dsize) {
         return (v * dsize) / ssize;
     }
 
 
+    /**
+     * Extracts the contributors database from the assets, unless the extracted copy is
+     * already up to date. This does disk I/O, so don't call it from the main thread.
+     */
     public static void extractContributorsCloudDatabase(Context context) {
-        final int BUFFER = 1024;
-        InputStream is = null;
-        OutputStream os;
-        File databasePath = context.getDatabasePath(DB_NAME);
-        try {
-            //noinspection ResultOfMethodCallIgnored
-            databasePath.getParentFile().mkdir();
-            is = context.getResources().getAssets().open(DB_NAME, AssetManager.ACCESS_BUFFER);
-            os = new FileOutputStream(databasePath);
-            int read = -1;
-            byte[] data = new byte[BUFFER];
-            while ((read = is.read(data, 0, BUFFER)) != -1) {
+        extractContributorsCloudDatabase(context, false);
+    }
+
+    private static synchronized void extractContributorsCloudDatabase(Context context,
+            boolean force) {
+        final File databasePath = context.getDatabasePath(DB_NAME);
+        final String version = getAssetVersion(context);
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        if (!force && version != null && databasePath.exists()
+                && TextUtils.equals(version, prefs.getString(PREF_DB_VERSION, null))) {
+            return;
+        }
+
+        // Extract to a temporary file and move it in place once complete, so nobody
+        // can ever open a partially written database
+        final File tmpPath = new File(databasePath.getPath() + ".tmp");
+        //noinspection ResultOfMethodCallIgnored
+        databasePath.getParentFile().mkdir();
+        try (InputStream is = context.getResources().getAssets().open(DB_NAME,
+                AssetManager.ACCESS_STREAMING);
+                FileOutputStream os = new FileOutputStream(tmpPath)) {
+            byte[] data = new byte[EXTRACT_BUFFER_SIZE];
+            int read;
+            while ((read = is.read(data)) != -1) {
                 os.write(data, 0, read);
             }
+            os.getFD().sync();
         } catch (IOException ex) {
-            Log.e(TAG, "Failed to extract contributors database");
+            Log.e(TAG, "Failed to extract contributors database", ex);
+            SQLiteDatabase.deleteDatabase(tmpPath);
+            return;
+        }
+
+        buildSearchIndex(tmpPath);
+
+        // Stale journals of the previous copy must not be applied to the new one
+        for (String suffix : new String[] { "-journal", "-wal", "-shm" }) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(databasePath.getPath() + suffix).delete();
+        }
+        try {
+            Files.move(tmpPath.toPath(), databasePath.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            Log.e(TAG, "Failed to move contributors database in place", ex);
+            SQLiteDatabase.deleteDatabase(tmpPath);
+            return;
+        }
+        // Drop the leftovers of the temporary database
+        SQLiteDatabase.deleteDatabase(tmpPath);
+
+        prefs.edit().putString(PREF_DB_VERSION, version).apply();
+
+        // The top contributors we index may have changed
+        SearchIndexCache.notifyFragmentChanged(context,
+                ContributorsCloudFragment.class.getName());
+    }
+
+    /**
+     * Returns a version derived from the content of the database asset, so any change to
+     * it is noticed whatever happens to the apk metadata.
+     */
+    private static String getAssetVersion(Context context) {
+        // The apk records the checksum of every entry, which is much cheaper than hashing
+        try (ZipFile apk = new ZipFile(context.getApplicationInfo().sourceDir)) {
+            ZipEntry entry = apk.getEntry("assets/" + DB_NAME);
+            if (entry != null && entry.getCrc() != -1) {
+                return DB_FORMAT_VERSION + ":" + entry.getSize() + ":"
+                        + Long.toHexString(entry.getCrc());
+            }
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to read the checksum of the contributors database", ex);
+        }
+
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream is = context.getResources().getAssets().open(DB_NAME,
+                AssetManager.ACCESS_STREAMING)) {
+            byte[] data = new byte[EXTRACT_BUFFER_SIZE];
+            int read;
+            while ((read = is.read(data)) != -1) {
+                crc.update(data, 0, read);
+                size += read;
+            }
+        } catch (IOException ex) {
+            Log.e(TAG, "Failed to hash contributors database", ex);
+            return null;
+        }
+        return DB_FORMAT_VERSION + ":" + size + ":" + Long.toHexString(crc.getValue());
+    }
+
+    private static void buildSearchIndex(File databasePath) {
+        SQLiteDatabase db = null;
+        try {
+            db = SQLiteDatabase.openDatabase(databasePath.getAbsolutePath(),
+                    null, SQLiteDatabase.OPEN_READWRITE);
+            db.beginTransaction();
+            try {
+                db.execSQL("drop table if exists " + SEARCH_TABLE + ";");
+                db.execSQL("create virtual table " + SEARCH_TABLE + " using " +
+                        "fts4(name, username, filter, tokenize=unicode61);");
+                db.execSQL("insert into " + SEARCH_TABLE + "(docid, name, username, filter) " +
+                        "select id, name, username, filter from metadata where id > 0;");
+                db.execSQL("insert into " + SEARCH_TABLE + "(" + SEARCH_TABLE + ") " +
+                        "values('optimize');");
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLException ex) {
+            Log.e(TAG, "Failed to build contributors search index", ex);
         } finally {
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException ex) {
-                    // Ignore
-                }
+            if (db != null) {
+                db.close();
             }
         }
     }
@@ -813,5 +972,13 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
 
                     return result;
                 }
+
+                @Override
+                public String getIndexFingerprint(Context context) {
+                    // The indexed contributors change along with the extracted database,
+                    // whose version is derived from the content of the asset
+                    return PreferenceManager.getDefaultSharedPreferences(context)
+                            .getString(PREF_DB_VERSION, "");
+                }
     };
 }
@@ -197,6 +197,7 @@ public class ContributorsCloudViewController implements View.OnTouchListener,
     private final float[] mMatrixValues = new float[9];
 
     // Listeners
+    private OnMatrixChangedListener mMatrixChangeListener;
     private OnPhotoTapListener mPhotoTapListener;
     private OnViewTapListener mViewTapListener;
 
@@ -297,6 +298,7 @@ public class ContributorsCloudViewController implements View.OnTouchListener,
         }
 
         // Clear listeners too
+        mMatrixChangeListener = null;
         mPhotoTapListener = null;
         mViewTapListener = null;
 
@@ -511,6 +513,10 @@ public class ContributorsCloudViewController implements View.OnTouchListener,
         mMaxScale = maximumScale;
     }
 
+    public void setOnMatrixChangeListener(OnMatrixChangedListener listener) {
+        mMatrixChangeListener = listener;
+    }
+
     public OnPhotoTapListener getOnPhotoTapListener() {
         return mPhotoTapListener;
     }
@@ -715,6 +721,14 @@ public class ContributorsCloudViewController implements View.OnTouchListener,
 
             checkImageViewScaleType();
             imageView.setImageMatrix(matrix);
+
+            // Call MatrixChangedListener if needed
+            if (null != mMatrixChangeListener) {
+                RectF displayRect = getDisplayRect(matrix);
+                if (null != displayRect) {
+                    mMatrixChangeListener.onMatrixChanged(displayRect);
+                }
+            }
         }
     }
 
@@ -885,6 +899,20 @@ public class ContributorsCloudViewController implements View.OnTouchListener,
         return true;
     }
 
+    /**
+     * Interface definition for a callback to be invoked when the internal Matrix has changed for
+     * this View.
+     */
+    public interface OnMatrixChangedListener {
+        /**
+         * Callback for when the Matrix displaying the Drawable has changed. This could be because
+         * the View's bounds have changed, or the user has zoomed.
+         *
+         * @param rect - Rectangle displaying the Drawable's new bounds.
+         */
+        void onMatrixChanged(RectF rect);
+    }
+
     /**
      * Interface definition for a callback to be invoked when the Photo is tapped with a single
      * tap.
@@ -0,0 +1,125 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Kusuma
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.gestures;
+
+import android.text.TextUtils;
+import android.util.SparseArray;
+
+import java.util.Arrays;
+
+/**
+ * Immutable mapping of scan codes to the list of actions they run, looked up without
+ * locking or allocating.
+ */
+final class ActionTable {
+    static final ActionTable EMPTY = new ActionTable(new int[0], new int[0][]);
+
+    private static final int[] NO_ACTIONS = new int[0];
+
+    // Sorted, with mActions[i] being the actions of mScanCodes[i]
+    private final int[] mScanCodes;
+    private final int[][] mActions;
+
+    private ActionTable(int[] scanCodes, int[][] actions) {
+        mScanCodes = scanCodes;
+        mActions = actions;
+    }
+
+    static ActionTable create(int[] scanCodes, int[][] actions) {
+        final SparseArray<int[]> mapping = new SparseArray<>(scanCodes.length);
+        for (int i = 0; i < scanCodes.length; i++) {
+            mapping.put(scanCodes[i], withoutNoAction(actions[i]));
+        }
+        // SparseArray keeps its keys sorted and without duplicates
+        final int size = mapping.size();
+        final int[] sortedScanCodes = new int[size];
+        final int[][] sortedActions = new int[size][];
+        for (int i = 0; i < size; i++) {
+            sortedScanCodes[i] = mapping.keyAt(i);
+            sortedActions[i] = mapping.valueAt(i);
+        }
+        return new ActionTable(sortedScanCodes, sortedActions);
+    }
+
+    /**
+     * Parses a comma separated list of actions, as stored by the settings.
+     */
+    static int[] parseActions(String value) {
+        if (TextUtils.isEmpty(value)) {
+            return NO_ACTIONS;
+        }
+        final String[] parts = value.split(",");
+        final int[] actions = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                actions[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException e) {
+                actions[i] = 0;
+            }
+        }
+        return actions;
+    }
+
+    /**
+     * Formats actions the way the settings store them, dropping the ones doing nothing.
+     * The inverse of {@link #parseActions}.
+     */
+    static String formatActions(int[] actions) {
+        final StringBuilder result = new StringBuilder();
+        for (int action : withoutNoAction(actions)) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(action);
+        }
+        // Older versions only understand a single action, 0 being none
+        return result.length() > 0 ? result.toString() : "0";
+    }
+
+    private static int[] withoutNoAction(int[] actions) {
+        if (actions == null) {
+            return NO_ACTIONS;
+        }
+        int count = 0;
+        for (int action : actions) {
+            if (action > 0) {
+                count++;
+            }
+        }
+        final int[] result = new int[count];
+        int i = 0;
+        for (int action : actions) {
+            if (action > 0) {
+                result[i++] = action;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the actions of a scan code, empty if the gesture does nothing and null if
+     * the scan code is not a gesture.
+     */
+    int[] get(int scanCode) {
+        final int index = Arrays.binarySearch(mScanCodes, scanCode);
+        return index >= 0 ? mActions[index] : null;
+    }
+
+    boolean isEmpty() {
+        return mScanCodes.length == 0;
+    }
+
+    boolean containsAction(int action) {
+        for (int[] actions : mActions) {
+            for (int a : actions) {
+                if (a == action) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
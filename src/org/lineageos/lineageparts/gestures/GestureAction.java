@@ -0,0 +1,26 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Kusuma
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.gestures;
+
+/**
+ * Something a touchscreen gesture can be bound to. Gestures can run several actions,
+ * which are batched by the key handler under a single wakelock and haptic feedback.
+ */
+interface GestureAction {
+    /**
+     * Runs the action on the main thread.
+     *
+     * @return whether the action did something the user should feel
+     */
+    boolean perform();
+
+    /**
+     * Whether the screen must be turned on before running the action.
+     */
+    default boolean needsWakeUp() {
+        return false;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Kusuma
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.gestures;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency of the touchscreen gesture actions, measured from the key up event.
+ * <p>
+ * Every action has a histogram for the proximity decision, the dispatch of the action
+ * message and the completion of the action. Histograms have a fixed number of buckets
+ * and are updated without locking, so recording is safe from any thread.
+ */
+class GestureLatencyStats {
+
+    private static final int MAX_ACTION = TouchscreenGestureConstants.ACTION_AMBIENT_DISPLAY;
+
+    private static final String[] STAGES = { "proximity", "dispatch", "complete" };
+    static final int STAGE_PROXIMITY = 0;
+    static final int STAGE_DISPATCH = 1;
+    static final int STAGE_COMPLETE = 2;
+
+    private final Histogram[][] mHistograms = new Histogram[MAX_ACTION + 1][STAGES.length];
+    private final AtomicLong mProximityChecks = new AtomicLong();
+    private final AtomicLong mProximityTimeouts = new AtomicLong();
+
+    GestureLatencyStats() {
+        for (Histogram[] histograms : mHistograms) {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new Histogram();
+            }
+        }
+    }
+
+    void record(int action, int stage, long latencyNanos) {
+        if (action >= 0 && action <= MAX_ACTION) {
+            mHistograms[action][stage].record(latencyNanos / 1000);
+        }
+    }
+
+    void recordProximityCheck(boolean timedOut) {
+        mProximityChecks.incrementAndGet();
+        if (timedOut) {
+            mProximityTimeouts.incrementAndGet();
+        }
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println("Gesture latency, from key up, in ms:");
+        for (int action = 0; action <= MAX_ACTION; action++) {
+            for (int stage = 0; stage < STAGES.length; stage++) {
+                final Histogram histogram = mHistograms[action][stage];
+                final long count = histogram.getCount();
+                if (count == 0) {
+                    continue;
+                }
+                pw.println(String.format("  action %d %s: count=%d p50=%.1f p90=%.1f p99=%.1f",
+                        action, STAGES[stage], count, histogram.getPercentile(50) / 1000f,
+                        histogram.getPercentile(90) / 1000f,
+                        histogram.getPercentile(99) / 1000f));
+            }
+        }
+
+        final long checks = mProximityChecks.get();
+        final long timeouts = mProximityTimeouts.get();
+        pw.println(String.format("Proximity checks: %d, timed out: %d (%.1f%%)", checks,
+                timeouts, checks > 0 ? 100f * timeouts / checks : 0f));
+    }
+
+    /**
+     * Histogram of values in microseconds, with two buckets per power of two.
+     */
+    private static class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+
+        void record(long micros) {
+            mBuckets.incrementAndGet(getBucket(micros));
+        }
+
+        long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += mBuckets.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the given percentile.
+         */
+        long getPercentile(int percentile) {
+            final long[] buckets = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = mBuckets.get(i);
+                count += buckets[i];
+            }
+
+            final long target = (count * percentile + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= target && seen > 0) {
+                    return getUpperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        private static int getBucket(long micros) {
+            if (micros <= 1) {
+                return 0;
+            }
+            final int highBit = 63 - Long.numberOfLeadingZeros(micros);
+            final int halfBit = (int) (micros >> (highBit - 1)) & 1;
+            return Math.min(2 * highBit + halfBit, BUCKETS - 1);
+        }
+
+        private static long getUpperBound(int bucket) {
+            if (bucket < 2) {
+                return 2;
+            }
+            final int highBit = bucket / 2;
+            final int halfBit = bucket % 2;
+            return (3L + halfBit) << (highBit - 1);
+        }
+    }
+}
@@ -8,12 +8,14 @@ package org.lineageos.lineageparts.gestures;
 
 import android.content.ActivityNotFoundException;
 import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
+import android.database.ContentObserver;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraManager;
@@ -22,6 +24,8 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.Manifest;
+import android.app.role.OnRoleHoldersChangedListener;
+import android.app.role.RoleManager;
 import android.media.AudioManager;
 import android.media.session.MediaSessionLegacyHelper;
 import android.net.Uri;
@@ -31,18 +35,24 @@ import android.os.Message;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 import android.os.SystemClock;
+import android.os.Trace;
 import android.os.UserHandle;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.provider.Settings;
 import android.util.Log;
-import android.util.SparseIntArray;
+import android.util.SparseArray;
 import android.view.KeyEvent;
 
+import androidx.annotation.VisibleForTesting;
+
+import com.android.internal.os.BackgroundThread;
 import com.android.internal.os.DeviceKeyHandler;
 
 import lineageos.providers.LineageSettings;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.List;
 
 public class KeyHandler implements DeviceKeyHandler {
@@ -54,42 +64,156 @@ public class KeyHandler implements DeviceKeyHandler {
     private static final int GESTURE_REQUEST = 0;
     private static final int GESTURE_WAKELOCK_DURATION = 3000;
     private static final int EVENT_PROCESS_WAKELOCK_DURATION = 500;
+    private static final String TRACE_GESTURE = "KeyHandler.gesture";
+    // How long the proximity sensor keeps being listened to after a reading
+    private static final int PROXIMITY_LINGER_DURATION = 1000;
 
     private final Context mContext;
     private final AudioManager mAudioManager;
     private final PowerManager mPowerManager;
     private final WakeLock mGestureWakeLock;
     private final EventHandler mEventHandler;
-    private final CameraManager mCameraManager;
     private final Vibrator mVibrator;
 
-    private final SparseIntArray mActionMapping = new SparseIntArray();
-    private final boolean mProximityWakeSupported;
+    // Replaced as a whole on updates, so the key path never sees a partial table
+    private volatile ActionTable mActionTable = ActionTable.EMPTY;
+
+    // Everything below is only set up once a gesture needing it gets mapped or used
+    private boolean mSettingsObserved;
+    private boolean mDumpReceiverRegistered;
+    private boolean mLaunchIntentsObserved;
+
+    private boolean mProximityInitialized;
+    private boolean mProximityWakeSupported;
     private SensorManager mSensorManager;
     private Sensor mProximitySensor;
     private WakeLock mProximityWakeLock;
     private boolean mDefaultProximity;
     private int mProximityTimeOut;
+    private final ProximityCheck mProximityCheck = new ProximityCheck();
 
-    private String mRearCameraId;
+    private CameraManager mCameraManager;
+    private volatile String mRearCameraId;
     private boolean mTorchEnabled;
 
+    // Action id to action, only used on the main thread
+    private final SparseArray<GestureAction> mActions = new SparseArray<>();
+
+    private final GestureLatencyStats mLatencyStats = new GestureLatencyStats();
+
+    // Launch intents of the app actions, null values meaning no app handles the action
+    private final SparseArray<Intent> mLaunchIntents = new SparseArray<>();
+    private int mLaunchIntentsGeneration;
+
+    // Settings read on the key path, refreshed by mSettingsObserver
+    private volatile SettingsSnapshot mSettings;
+
+    /**
+     * A gesture on its way to its actions, carrying its own timing and proximity state so
+     * gestures following each other closely don't mix them up.
+     */
+    private static final class GestureRequest {
+        final int[] mActions;
+        // Key up time
+        final long mStartNanos;
+        private boolean mProximityPending;
+
+        GestureRequest(int[] actions, long startNanos, boolean proximityPending) {
+            mActions = actions;
+            mStartNanos = startNanos;
+            mProximityPending = proximityPending;
+        }
+
+        /**
+         * Ends the proximity check, if it's still pending.
+         *
+         * @return whether the caller is the one that ended it
+         */
+        synchronized boolean finishProximityCheck() {
+            final boolean pending = mProximityPending;
+            mProximityPending = false;
+            return pending;
+        }
+
+        long getElapsedNanos() {
+            return SystemClock.elapsedRealtimeNanos() - mStartNanos;
+        }
+    }
+
+    private static final class SettingsSnapshot {
+        final boolean mSetupCompleted;
+        final boolean mProximityOnWake;
+        final boolean mHapticFeedback;
+        final boolean mDozeEnabled;
+
+        SettingsSnapshot(boolean setupCompleted, boolean proximityOnWake,
+                boolean hapticFeedback, boolean dozeEnabled) {
+            mSetupCompleted = setupCompleted;
+            mProximityOnWake = proximityOnWake;
+            mHapticFeedback = hapticFeedback;
+            mDozeEnabled = dozeEnabled;
+        }
+    }
+
     private final BroadcastReceiver mUpdateReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
             int[] keycodes = intent.getIntArrayExtra(
                     TouchscreenGestureConstants.UPDATE_EXTRA_KEYCODE_MAPPING);
-            int[] actions = intent.getIntArrayExtra(
-                    TouchscreenGestureConstants.UPDATE_EXTRA_ACTION_MAPPING);
-            mActionMapping.clear();
+            int[][] actions = getActionMapping(intent);
             if (keycodes != null && actions != null && keycodes.length == actions.length) {
-                for (int i = 0; i < keycodes.length; i++) {
-                    mActionMapping.put(keycodes[i], actions[i]);
-                }
+                setActionTable(ActionTable.create(keycodes, actions));
+            } else {
+                setActionTable(ActionTable.EMPTY);
+            }
+        }
+    };
+
+    private static int[][] getActionMapping(Intent intent) {
+        final String[] macros = intent.getStringArrayExtra(
+                TouchscreenGestureConstants.UPDATE_EXTRA_MACRO_MAPPING);
+        if (macros != null) {
+            final int[][] actions = new int[macros.length][];
+            for (int i = 0; i < macros.length; i++) {
+                actions[i] = ActionTable.parseActions(macros[i]);
+            }
+            return actions;
+        }
+
+        // Single action per gesture
+        final int[] actions = intent.getIntArrayExtra(
+                TouchscreenGestureConstants.UPDATE_EXTRA_ACTION_MAPPING);
+        if (actions == null) {
+            return null;
+        }
+        final int[][] result = new int[actions.length][];
+        for (int i = 0; i < actions.length; i++) {
+            result[i] = new int[] { actions[i] };
+        }
+        return result;
+    }
+
+    private final BroadcastReceiver mDumpReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final StringWriter writer = new StringWriter();
+            dump(new PrintWriter(writer));
+            for (String line : writer.toString().split("\n")) {
+                Log.i(TAG, line);
             }
         }
     };
 
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidateLaunchIntents();
+        }
+    };
+
+    private final OnRoleHoldersChangedListener mRoleHoldersListener =
+            (roleName, user) -> invalidateLaunchIntents();
+
     public KeyHandler(final Context context) {
         mContext = context;
 
@@ -101,11 +225,113 @@ public class KeyHandler implements DeviceKeyHandler {
 
         mEventHandler = new EventHandler(Looper.getMainLooper());
 
-        mCameraManager = mContext.getSystemService(CameraManager.class);
-        mCameraManager.registerTorchCallback(new TorchModeCallback(), mEventHandler);
-
         mVibrator = context.getSystemService(Vibrator.class);
 
+        registerDefaultActions();
+
+        mContext.registerReceiver(mUpdateReceiver,
+                new IntentFilter(TouchscreenGestureConstants.UPDATE_PREFS_ACTION),
+                Context.RECEIVER_NOT_EXPORTED);
+    }
+
+    /**
+     * Replaces the gesture mapping. Must be called on the main thread.
+     */
+    @VisibleForTesting
+    void setActionTable(ActionTable actionTable) {
+        mActionTable = actionTable;
+        onActionTableChanged();
+    }
+
+    /**
+     * Sets up what the mapped gestures need, ahead of their first use, and tears down
+     * what they no longer need. Called on the main thread.
+     */
+    private void onActionTableChanged() {
+        final ActionTable actionTable = mActionTable;
+        setDumpReceiverRegistered(!actionTable.isEmpty());
+        setLaunchIntentsObserved(hasLaunchAction(actionTable));
+        if (actionTable.isEmpty()) {
+            return;
+        }
+
+        if (!mSettingsObserved) {
+            mSettingsObserved = true;
+            // Settings are read on the observer's thread, keep it off the main thread
+            new SettingsObserver(BackgroundThread.getHandler()).register();
+            BackgroundThread.getHandler().post(this::updateSettings);
+        }
+        if (actionTable.containsAction(TouchscreenGestureConstants.ACTION_FLASHLIGHT)) {
+            initTorch();
+        }
+        if (mLaunchIntentsObserved) {
+            BackgroundThread.getHandler().post(this::resolveLaunchIntents);
+        }
+    }
+
+    private static boolean hasLaunchAction(ActionTable actionTable) {
+        return actionTable.containsAction(TouchscreenGestureConstants.ACTION_BROWSER)
+                || actionTable.containsAction(TouchscreenGestureConstants.ACTION_EMAIL)
+                || actionTable.containsAction(TouchscreenGestureConstants.ACTION_MESSAGES);
+    }
+
+    private void setDumpReceiverRegistered(boolean registered) {
+        if (registered == mDumpReceiverRegistered) {
+            return;
+        }
+        mDumpReceiverRegistered = registered;
+        if (!registered) {
+            mContext.unregisterReceiver(mDumpReceiver);
+            return;
+        }
+        mContext.registerReceiver(mDumpReceiver,
+                new IntentFilter(TouchscreenGestureConstants.DUMP_LATENCY_ACTION),
+                Manifest.permission.DUMP, BackgroundThread.getHandler(),
+                Context.RECEIVER_EXPORTED);
+    }
+
+    /**
+     * Watches the installed apps and the default app roles while app launch actions are
+     * mapped, so their cached launch intents stay current.
+     */
+    private void setLaunchIntentsObserved(boolean observed) {
+        if (observed == mLaunchIntentsObserved) {
+            return;
+        }
+        mLaunchIntentsObserved = observed;
+        final RoleManager roleManager = mContext.getSystemService(RoleManager.class);
+        if (!observed) {
+            mContext.unregisterReceiver(mPackageReceiver);
+            if (roleManager != null) {
+                roleManager.removeOnRoleHoldersChangedListenerAsUser(mRoleHoldersListener,
+                        UserHandle.ALL);
+            }
+            // Nothing keeps them current anymore
+            clearLaunchIntents();
+            return;
+        }
+
+        final IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addDataScheme("package");
+        mContext.registerReceiver(mPackageReceiver, packageFilter, null,
+                BackgroundThread.getHandler(), Context.RECEIVER_NOT_EXPORTED);
+
+        if (roleManager != null) {
+            roleManager.addOnRoleHoldersChangedListenerAsUser(BackgroundThread.getExecutor(),
+                    mRoleHoldersListener, UserHandle.ALL);
+        }
+    }
+
+    private synchronized void initProximity() {
+        if (mProximityInitialized) {
+            return;
+        }
+        mProximityInitialized = true;
+
         final Resources resources = mContext.getResources();
         mProximityWakeSupported = resources.getBoolean(
                 org.lineageos.platform.internal.R.bool.config_proximityCheckOnWake);
@@ -113,18 +339,80 @@ public class KeyHandler implements DeviceKeyHandler {
         if (mProximityWakeSupported) {
             mProximityTimeOut = resources.getInteger(
                     org.lineageos.platform.internal.R.integer.config_proximityCheckTimeout);
-            mDefaultProximity = mContext.getResources().getBoolean(
+            mDefaultProximity = resources.getBoolean(
                     org.lineageos.platform.internal.R.bool.
                             config_proximityCheckOnWakeEnabledByDefault);
 
-            mSensorManager = context.getSystemService(SensorManager.class);
+            mSensorManager = mContext.getSystemService(SensorManager.class);
             mProximitySensor = mSensorManager.getDefaultSensor(Sensor.TYPE_PROXIMITY);
             mProximityWakeLock = mPowerManager.newWakeLock(
                     PowerManager.PARTIAL_WAKE_LOCK, "LineageParts:ProximityWakeLock");
         }
-        mContext.registerReceiver(mUpdateReceiver,
-                new IntentFilter(TouchscreenGestureConstants.UPDATE_PREFS_ACTION),
-                Context.RECEIVER_NOT_EXPORTED);
+    }
+
+    private synchronized void initTorch() {
+        if (mCameraManager != null) {
+            return;
+        }
+        mCameraManager = mContext.getSystemService(CameraManager.class);
+        mCameraManager.registerTorchCallback(new TorchModeCallback(), mEventHandler);
+        // Find the camera now rather than on the first toggle
+        BackgroundThread.getHandler().post(this::getRearCameraId);
+    }
+
+    private class SettingsObserver extends ContentObserver {
+        SettingsObserver(Handler handler) {
+            super(handler);
+        }
+
+        void register() {
+            final ContentResolver resolver = mContext.getContentResolver();
+            resolver.registerContentObserver(Settings.Secure.getUriFor(
+                    Settings.Secure.USER_SETUP_COMPLETE), false, this);
+            resolver.registerContentObserver(Settings.Secure.getUriFor(
+                    Settings.Secure.DOZE_ENABLED), false, this);
+            resolver.registerContentObserver(LineageSettings.System.getUriFor(
+                    LineageSettings.System.PROXIMITY_ON_WAKE), false, this);
+            resolver.registerContentObserver(LineageSettings.System.getUriFor(
+                    LineageSettings.System.TOUCHSCREEN_GESTURE_HAPTIC_FEEDBACK), false, this);
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            updateSettings();
+        }
+    }
+
+    private SettingsSnapshot updateSettings() {
+        // The default of PROXIMITY_ON_WAKE comes from the proximity configuration
+        initProximity();
+
+        final ContentResolver resolver = mContext.getContentResolver();
+        final SettingsSnapshot settings = new SettingsSnapshot(
+                Settings.Secure.getInt(resolver, Settings.Secure.USER_SETUP_COMPLETE, 0) != 0,
+                LineageSettings.System.getInt(resolver, LineageSettings.System.PROXIMITY_ON_WAKE,
+                        mDefaultProximity ? 1 : 0) == 1,
+                LineageSettings.System.getInt(resolver,
+                        LineageSettings.System.TOUCHSCREEN_GESTURE_HAPTIC_FEEDBACK, 1) != 0,
+                Settings.Secure.getInt(resolver, Settings.Secure.DOZE_ENABLED, 1) != 0);
+        mSettings = settings;
+        return settings;
+    }
+
+    /**
+     * Replaces the settings read on the key path, until one of them changes.
+     */
+    @VisibleForTesting
+    void setSettings(boolean setupCompleted, boolean proximityOnWake, boolean hapticFeedback,
+            boolean dozeEnabled) {
+        mSettings = new SettingsSnapshot(setupCompleted, proximityOnWake, hapticFeedback,
+                dozeEnabled);
+    }
+
+    private SettingsSnapshot getSettings() {
+        final SettingsSnapshot settings = mSettings;
+        // Only happens if a key comes in before the first snapshot was taken
+        return settings != null ? settings : updateSettings();
     }
 
     private class TorchModeCallback extends CameraManager.TorchCallback {
@@ -142,20 +430,29 @@ public class KeyHandler implements DeviceKeyHandler {
     }
 
     public KeyEvent handleKeyEvent(final KeyEvent event) {
-        final int action = mActionMapping.get(event.getScanCode(), -1);
-        if (action < 0 || event.getAction() != KeyEvent.ACTION_UP || !hasSetupCompleted()) {
+        final int[] actions = mActionTable.get(event.getScanCode());
+        if (actions == null || event.getAction() != KeyEvent.ACTION_UP) {
+            return event;
+        }
+        final SettingsSnapshot settings = getSettings();
+        if (!settings.mSetupCompleted) {
             return event;
         }
 
-        if (action != 0 && !mEventHandler.hasMessages(GESTURE_REQUEST)) {
-            final Message msg = getMessageForAction(action);
-            final boolean proxWakeEnabled = LineageSettings.System.getInt(
-                    mContext.getContentResolver(),
-                    LineageSettings.System.PROXIMITY_ON_WAKE, mDefaultProximity ? 1 : 0) == 1;
-            if (mProximityWakeSupported && proxWakeEnabled && mProximitySensor != null) {
+        if (actions.length > 0 && !mEventHandler.hasMessages(GESTURE_REQUEST)) {
+            // Stats and traces are attributed to the first action of the gesture
+            final int action = actions[0];
+            final boolean proxWakeEnabled = settings.mProximityOnWake;
+            final boolean proximityCheck =
+                    mProximityWakeSupported && proxWakeEnabled && mProximitySensor != null;
+            final GestureRequest request = new GestureRequest(actions,
+                    SystemClock.elapsedRealtimeNanos(), proximityCheck);
+            final Message msg = getMessageForRequest(request);
+            Trace.beginAsyncSection(TRACE_GESTURE, action);
+            if (proximityCheck) {
                 mGestureWakeLock.acquire(2L * mProximityTimeOut);
                 mEventHandler.sendMessageDelayed(msg, mProximityTimeOut);
-                processEvent(action);
+                mProximityCheck.check(request);
             } else {
                 mGestureWakeLock.acquire(EVENT_PROCESS_WAKELOCK_DURATION);
                 mEventHandler.sendMessage(msg);
@@ -165,41 +462,100 @@ public class KeyHandler implements DeviceKeyHandler {
         return null;
     }
 
-    private boolean hasSetupCompleted() {
-        return Settings.Secure.getInt(mContext.getContentResolver(),
-                Settings.Secure.USER_SETUP_COMPLETE, 0) != 0;
+    private void onProximityResult(final GestureRequest request, final boolean near) {
+        final int action = request.mActions[0];
+        if (mProximityWakeLock.isHeld()) {
+            mProximityWakeLock.release();
+        }
+        if (!request.finishProximityCheck()) {
+            // The sensor took too long; ignoring
+            return;
+        }
+        Trace.beginSection("KeyHandler.proximity");
+        mLatencyStats.recordProximityCheck(false);
+        mLatencyStats.record(action, GestureLatencyStats.STAGE_PROXIMITY,
+                request.getElapsedNanos());
+        mEventHandler.removeMessages(GESTURE_REQUEST, request);
+        if (!near) {
+            Message msg = getMessageForRequest(request);
+            mEventHandler.sendMessage(msg);
+        } else {
+            // Something covers the screen, the gesture ends here
+            Trace.endAsyncSection(TRACE_GESTURE, action);
+        }
+        Trace.endSection();
     }
 
-    private void processEvent(final int action) {
-        mSensorManager.registerListener(new SensorEventListener() {
-            @Override
-            public void onSensorChanged(SensorEvent event) {
-                if (mProximityWakeLock.isHeld()) {
-                    mProximityWakeLock.release();
-                }
-                mSensorManager.unregisterListener(this);
-                if (!mEventHandler.hasMessages(GESTURE_REQUEST)) {
-                    // The sensor took too long; ignoring
+    /**
+     * Reusable proximity check. The sensor keeps being listened to for a while after a
+     * reading, so gestures following each other closely get their answer right away
+     * instead of waiting for the sensor to come up again.
+     */
+    private class ProximityCheck implements SensorEventListener, Runnable {
+        private static final int STATE_IDLE = 0;
+        // Registered, a gesture waits for the first reading
+        private static final int STATE_WAITING = 1;
+        // Registered, mNear is the current reading
+        private static final int STATE_LINGERING = 2;
+
+        private int mState = STATE_IDLE;
+        private GestureRequest mPendingRequest;
+        private boolean mNear;
+
+        void check(GestureRequest request) {
+            final boolean near;
+            synchronized (this) {
+                if (mState != STATE_LINGERING) {
+                    mPendingRequest = request;
+                    if (mState == STATE_IDLE) {
+                        mState = STATE_WAITING;
+                        mSensorManager.registerListener(this, mProximitySensor,
+                                SensorManager.SENSOR_DELAY_FASTEST);
+                    }
                     return;
                 }
-                mEventHandler.removeMessages(GESTURE_REQUEST);
-                if (event.values[0] >= mProximitySensor.getMaximumRange()) {
-                    Message msg = getMessageForAction(action);
-                    mEventHandler.sendMessage(msg);
-                }
+                near = mNear;
             }
+            onProximityResult(request, near);
+        }
 
-            @Override
-            public void onAccuracyChanged(Sensor sensor, int accuracy) {
-                // Ignore
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            final boolean near = event.values[0] < mProximitySensor.getMaximumRange();
+            final boolean waiting;
+            final GestureRequest request;
+            synchronized (this) {
+                waiting = mState == STATE_WAITING;
+                request = mPendingRequest;
+                mPendingRequest = null;
+                mNear = near;
+                mState = STATE_LINGERING;
             }
+            mEventHandler.removeCallbacks(this);
+            mEventHandler.postDelayed(this, PROXIMITY_LINGER_DURATION);
+            if (waiting && request != null) {
+                onProximityResult(request, near);
+            }
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+            // Ignore
+        }
 
-        }, mProximitySensor, SensorManager.SENSOR_DELAY_FASTEST);
+        @Override
+        public void run() {
+            synchronized (this) {
+                mSensorManager.unregisterListener(this);
+                mState = STATE_IDLE;
+            }
+        }
     }
 
-    private Message getMessageForAction(final int action) {
+    private Message getMessageForRequest(final GestureRequest request) {
         Message msg = mEventHandler.obtainMessage(GESTURE_REQUEST);
-        msg.arg1 = action;
+        msg.arg1 = request.mActions[0];
+        msg.obj = request;
         return msg;
     }
 
@@ -211,155 +567,169 @@ public class KeyHandler implements DeviceKeyHandler {
 
         @Override
         public void handleMessage(final Message msg) {
-            switch (msg.arg1) {
-                case TouchscreenGestureConstants.ACTION_CAMERA:
-                    launchCamera();
-                    break;
-                case TouchscreenGestureConstants.ACTION_FLASHLIGHT:
-                    toggleFlashlight();
-                    break;
-                case TouchscreenGestureConstants.ACTION_BROWSER:
-                    launchBrowser();
-                    break;
-                case TouchscreenGestureConstants.ACTION_DIALER:
-                    launchDialer();
-                    break;
-                case TouchscreenGestureConstants.ACTION_EMAIL:
-                    launchEmail();
-                    break;
-                case TouchscreenGestureConstants.ACTION_MESSAGES:
-                    launchMessages();
-                    break;
-                case TouchscreenGestureConstants.ACTION_PLAY_PAUSE_MUSIC:
-                    playPauseMusic();
-                    break;
-                case TouchscreenGestureConstants.ACTION_PREVIOUS_TRACK:
-                    previousTrack();
-                    break;
-                case TouchscreenGestureConstants.ACTION_NEXT_TRACK:
-                    nextTrack();
-                    break;
-                case TouchscreenGestureConstants.ACTION_VOLUME_DOWN:
-                    volumeDown();
-                    break;
-                case TouchscreenGestureConstants.ACTION_VOLUME_UP:
-                    volumeUp();
-                    break;
-                case TouchscreenGestureConstants.ACTION_AMBIENT_DISPLAY:
-                    launchDozePulse();
-                    break;
+            final int action = msg.arg1;
+            final GestureRequest request = (GestureRequest) msg.obj;
+            if (request.finishProximityCheck()) {
+                // The proximity check timed out, the action runs anyway
+                mLatencyStats.recordProximityCheck(true);
             }
-        }
-    }
-
-    private void launchCamera() {
-        mGestureWakeLock.acquire(GESTURE_WAKELOCK_DURATION);
-        final Intent intent = new Intent(lineageos.content.Intent.ACTION_SCREEN_CAMERA_GESTURE);
-        mContext.sendBroadcastAsUser(intent, UserHandle.CURRENT,
-                Manifest.permission.STATUS_BAR_SERVICE);
-        doHapticFeedback();
-    }
+            mLatencyStats.record(action, GestureLatencyStats.STAGE_DISPATCH,
+                    request.getElapsedNanos());
 
-    private void launchBrowser() {
-        performWakeUp();
-        final Intent intent = getLaunchableIntent(
-                new Intent(Intent.ACTION_VIEW, Uri.parse("http:")));
-        startActivitySafely(intent);
-        doHapticFeedback();
-    }
+            Trace.beginSection("KeyHandler.action");
+            performActions(request.mActions);
+            Trace.endSection();
 
-    private void launchDialer() {
-        performWakeUp();
-        final Intent intent = new Intent(Intent.ACTION_DIAL, null);
-        startActivitySafely(intent);
-        doHapticFeedback();
+            mLatencyStats.record(action, GestureLatencyStats.STAGE_COMPLETE,
+                    request.getElapsedNanos());
+            Trace.endAsyncSection(TRACE_GESTURE, action);
+        }
     }
 
-    private void launchEmail() {
-        performWakeUp();
-        final Intent intent = getLaunchableIntent(
-                new Intent(Intent.ACTION_VIEW, Uri.parse("mailto:")));
-        startActivitySafely(intent);
-        doHapticFeedback();
+    /**
+     * Adds an action gestures can be bound to, replacing any action with the same id.
+     * Must be called on the main thread.
+     */
+    void registerAction(int id, GestureAction action) {
+        mActions.put(id, action);
     }
 
-    private void launchMessages() {
-        performWakeUp();
-        final Intent intent = getLaunchableIntent(
-                new Intent(Intent.ACTION_VIEW, Uri.parse("sms:")));
-        startActivitySafely(intent);
-        doHapticFeedback();
+    private void registerDefaultActions() {
+        registerAction(TouchscreenGestureConstants.ACTION_CAMERA, this::launchCamera);
+        registerAction(TouchscreenGestureConstants.ACTION_FLASHLIGHT, this::toggleFlashlight);
+        registerAction(TouchscreenGestureConstants.ACTION_BROWSER,
+                new LaunchAction(TouchscreenGestureConstants.ACTION_BROWSER));
+        registerAction(TouchscreenGestureConstants.ACTION_DIALER,
+                new LaunchAction(TouchscreenGestureConstants.ACTION_DIALER));
+        registerAction(TouchscreenGestureConstants.ACTION_EMAIL,
+                new LaunchAction(TouchscreenGestureConstants.ACTION_EMAIL));
+        registerAction(TouchscreenGestureConstants.ACTION_MESSAGES,
+                new LaunchAction(TouchscreenGestureConstants.ACTION_MESSAGES));
+        registerAction(TouchscreenGestureConstants.ACTION_PLAY_PAUSE_MUSIC,
+                () -> dispatchMediaKeyWithWakeLockToMediaSession(
+                        KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE));
+        registerAction(TouchscreenGestureConstants.ACTION_PREVIOUS_TRACK,
+                () -> dispatchMediaKeyWithWakeLockToMediaSession(KeyEvent.KEYCODE_MEDIA_PREVIOUS));
+        registerAction(TouchscreenGestureConstants.ACTION_NEXT_TRACK,
+                () -> dispatchMediaKeyWithWakeLockToMediaSession(KeyEvent.KEYCODE_MEDIA_NEXT));
+        registerAction(TouchscreenGestureConstants.ACTION_VOLUME_DOWN,
+                () -> adjustVolume(AudioManager.ADJUST_LOWER));
+        registerAction(TouchscreenGestureConstants.ACTION_VOLUME_UP,
+                () -> adjustVolume(AudioManager.ADJUST_RAISE));
+        registerAction(TouchscreenGestureConstants.ACTION_AMBIENT_DISPLAY, this::launchDozePulse);
     }
 
-    private void performWakeUp() {
+    /**
+     * Runs the actions of a gesture as a single batch: one wakelock, at most one wake up
+     * and one haptic feedback, whatever the number of actions.
+     */
+    private void performActions(final int[] actions) {
         mGestureWakeLock.acquire(GESTURE_WAKELOCK_DURATION);
-        mPowerManager.wakeUp(SystemClock.uptimeMillis(), PowerManager.WAKE_REASON_GESTURE,
-                GESTURE_WAKEUP_REASON);
-    }
 
-    private void toggleFlashlight() {
-        String rearCameraId = getRearCameraId();
-        if (rearCameraId != null) {
-            mGestureWakeLock.acquire(GESTURE_WAKELOCK_DURATION);
-            try {
-                mCameraManager.setTorchMode(rearCameraId, !mTorchEnabled);
-                mTorchEnabled = !mTorchEnabled;
-            } catch (CameraAccessException e) {
-                // Ignore
+        for (int id : actions) {
+            final GestureAction action = mActions.get(id);
+            if (action != null && action.needsWakeUp()) {
+                performWakeUp();
+                break;
+            }
+        }
+
+        boolean performed = false;
+        for (int id : actions) {
+            final GestureAction action = mActions.get(id);
+            if (action == null) {
+                Log.w(TAG, "Unknown gesture action " + id);
+                continue;
             }
+            performed |= action.perform();
+        }
+
+        if (performed) {
             doHapticFeedback();
         }
     }
 
-    private void playPauseMusic() {
-        dispatchMediaKeyWithWakeLockToMediaSession(KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE);
-        doHapticFeedback();
+    private class LaunchAction implements GestureAction {
+        private final int mAction;
+
+        LaunchAction(int action) {
+            mAction = action;
+        }
+
+        @Override
+        public boolean perform() {
+            final Intent intent = mAction == TouchscreenGestureConstants.ACTION_DIALER
+                    ? new Intent(Intent.ACTION_DIAL, null) : getLaunchIntent(mAction);
+            startActivitySafely(intent);
+            return true;
+        }
+
+        @Override
+        public boolean needsWakeUp() {
+            return true;
+        }
     }
 
-    private void previousTrack() {
-        dispatchMediaKeyWithWakeLockToMediaSession(KeyEvent.KEYCODE_MEDIA_PREVIOUS);
-        doHapticFeedback();
+    /**
+     * Prints the latency of the gesture actions since the handler was created.
+     */
+    public void dump(PrintWriter pw) {
+        mLatencyStats.dump(pw);
     }
 
-    private void nextTrack() {
-        dispatchMediaKeyWithWakeLockToMediaSession(KeyEvent.KEYCODE_MEDIA_NEXT);
-        doHapticFeedback();
+    private boolean launchCamera() {
+        final Intent intent = new Intent(lineageos.content.Intent.ACTION_SCREEN_CAMERA_GESTURE);
+        mContext.sendBroadcastAsUser(intent, UserHandle.CURRENT,
+                Manifest.permission.STATUS_BAR_SERVICE);
+        return true;
     }
 
-    private void volumeDown() {
-        mGestureWakeLock.acquire(GESTURE_WAKELOCK_DURATION);
-        mAudioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC, AudioManager.ADJUST_LOWER, 0);
-        doHapticFeedback();
+    private void performWakeUp() {
+        mPowerManager.wakeUp(SystemClock.uptimeMillis(), PowerManager.WAKE_REASON_GESTURE,
+                GESTURE_WAKEUP_REASON);
     }
 
-    private void volumeUp() {
-        mGestureWakeLock.acquire(GESTURE_WAKELOCK_DURATION);
-        mAudioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC, AudioManager.ADJUST_RAISE, 0);
-        doHapticFeedback();
+    private boolean toggleFlashlight() {
+        initTorch();
+        String rearCameraId = getRearCameraId();
+        if (rearCameraId == null) {
+            return false;
+        }
+        try {
+            mCameraManager.setTorchMode(rearCameraId, !mTorchEnabled);
+            mTorchEnabled = !mTorchEnabled;
+        } catch (CameraAccessException e) {
+            // Ignore
+        }
+        return true;
     }
 
-    private void launchDozePulse() {
-        final boolean dozeEnabled = Settings.Secure.getInt(mContext.getContentResolver(),
-                Settings.Secure.DOZE_ENABLED, 1) != 0;
-        if (dozeEnabled) {
-            mGestureWakeLock.acquire(GESTURE_WAKELOCK_DURATION);
-            final Intent intent = new Intent(PULSE_ACTION);
-            mContext.sendBroadcastAsUser(intent, UserHandle.CURRENT);
-            doHapticFeedback();
+    private boolean adjustVolume(final int direction) {
+        mAudioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC, direction, 0);
+        return true;
+    }
+
+    private boolean launchDozePulse() {
+        if (!getSettings().mDozeEnabled) {
+            return false;
         }
+        final Intent intent = new Intent(PULSE_ACTION);
+        mContext.sendBroadcastAsUser(intent, UserHandle.CURRENT);
+        return true;
     }
 
-    private void dispatchMediaKeyWithWakeLockToMediaSession(final int keycode) {
+    private boolean dispatchMediaKeyWithWakeLockToMediaSession(final int keycode) {
         final MediaSessionLegacyHelper helper = MediaSessionLegacyHelper.getHelper(mContext);
         if (helper == null) {
             Log.w(TAG, "Unable to send media key event");
-            return;
+            return true;
         }
         KeyEvent event = new KeyEvent(SystemClock.uptimeMillis(),
                 SystemClock.uptimeMillis(), KeyEvent.ACTION_DOWN, keycode, 0);
         helper.sendMediaButtonEvent(event, true);
         event = KeyEvent.changeAction(event, KeyEvent.ACTION_UP);
         helper.sendMediaButtonEvent(event, true);
+        return true;
     }
 
     private void startActivitySafely(final Intent intent) {
@@ -384,9 +754,7 @@ public class KeyHandler implements DeviceKeyHandler {
         }
 
         if (mAudioManager.getRingerMode() != AudioManager.RINGER_MODE_SILENT) {
-            final boolean enabled = LineageSettings.System.getInt(mContext.getContentResolver(),
-                    LineageSettings.System.TOUCHSCREEN_GESTURE_HAPTIC_FEEDBACK, 1) != 0;
-            if (enabled) {
+            if (getSettings().mHapticFeedback) {
                 mVibrator.vibrate(VibrationEffect.createOneShot(50,
                         VibrationEffect.DEFAULT_AMPLITUDE));
             }
@@ -412,6 +780,63 @@ public class KeyHandler implements DeviceKeyHandler {
         return mRearCameraId;
     }
 
+    private static String getLaunchScheme(int action) {
+        switch (action) {
+            case TouchscreenGestureConstants.ACTION_BROWSER:
+                return "http:";
+            case TouchscreenGestureConstants.ACTION_EMAIL:
+                return "mailto:";
+            case TouchscreenGestureConstants.ACTION_MESSAGES:
+                return "sms:";
+        }
+        return null;
+    }
+
+    private Intent getLaunchIntent(int action) {
+        final int generation;
+        synchronized (mLaunchIntents) {
+            final int index = mLaunchIntents.indexOfKey(action);
+            if (index >= 0) {
+                final Intent intent = mLaunchIntents.valueAt(index);
+                return intent != null ? new Intent(intent) : null;
+            }
+            generation = mLaunchIntentsGeneration;
+        }
+
+        final Intent intent = getLaunchableIntent(
+                new Intent(Intent.ACTION_VIEW, Uri.parse(getLaunchScheme(action))));
+        synchronized (mLaunchIntents) {
+            // Don't keep what was resolved before the installed apps changed
+            if (generation == mLaunchIntentsGeneration) {
+                mLaunchIntents.put(action, intent);
+            }
+        }
+        return intent != null ? new Intent(intent) : null;
+    }
+
+    private void resolveLaunchIntents() {
+        final ActionTable actionTable = mActionTable;
+        for (int action : new int[] { TouchscreenGestureConstants.ACTION_BROWSER,
+                TouchscreenGestureConstants.ACTION_EMAIL,
+                TouchscreenGestureConstants.ACTION_MESSAGES }) {
+            if (actionTable.containsAction(action)) {
+                getLaunchIntent(action);
+            }
+        }
+    }
+
+    private void invalidateLaunchIntents() {
+        clearLaunchIntents();
+        resolveLaunchIntents();
+    }
+
+    private void clearLaunchIntents() {
+        synchronized (mLaunchIntents) {
+            mLaunchIntents.clear();
+            mLaunchIntentsGeneration++;
+        }
+    }
+
     private Intent getLaunchableIntent(Intent intent) {
         PackageManager pm = mContext.getPackageManager();
         List<ResolveInfo> resInfo = pm.queryIntentActivities(intent,
@@ -9,10 +9,15 @@ package org.lineageos.lineageparts.gestures;
 class TouchscreenGestureConstants {
     // Broadcast action for settings update
     static final String UPDATE_PREFS_ACTION = "org.lineageos.lineageparts.gestures.UPDATE_SETTINGS";
+    // Broadcast action logging the gesture latency stats, requires the DUMP permission
+    static final String DUMP_LATENCY_ACTION = "org.lineageos.lineageparts.gestures.DUMP_LATENCY";
     // Broadcast extra: keycode mapping (int[]: key = gesture ID, value = keycode)
     static final String UPDATE_EXTRA_KEYCODE_MAPPING = "keycode_mappings";
     // Broadcast extra: assigned actions (int[]: key = gesture ID, value = action)
     static final String UPDATE_EXTRA_ACTION_MAPPING = "action_mappings";
+    // Broadcast extra: assigned actions, several per gesture allowed
+    // (String[]: key = gesture ID, value = comma separated actions, run in order)
+    static final String UPDATE_EXTRA_MACRO_MAPPING = "macro_mappings";
 
     // Touchscreen gesture actions
     static final int ACTION_FLASHLIGHT = 1;
@@ -9,11 +9,13 @@ package org.lineageos.lineageparts.gestures;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.icu.text.ListFormatter;
 import android.os.Bundle;
 import android.os.UserHandle;
 import android.util.ArraySet;
 
-import androidx.preference.ListPreference;
+import androidx.annotation.WorkerThread;
+import androidx.preference.MultiSelectListPreference;
 import androidx.preference.PreferenceManager;
 
 import lineageos.hardware.LineageHardwareManager;
@@ -26,6 +28,9 @@ import org.lineageos.lineageparts.search.Searchable;
 import org.lineageos.lineageparts.utils.ResourceUtils;
 
 import java.lang.System;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 public class TouchscreenGestureSettings extends SettingsPreferenceFragment
@@ -61,7 +66,11 @@ public class TouchscreenGestureSettings extends SettingsPreferenceFragment
         }
     }
 
-    private class TouchscreenGesturePreference extends ListPreference {
+    /**
+     * Lets several actions be picked for a gesture. They are stored as a comma separated
+     * list, run in the order of the action entries.
+     */
+    private class TouchscreenGesturePreference extends MultiSelectListPreference {
         private final Context mContext;
         private final TouchscreenGesture mGesture;
 
@@ -72,39 +81,86 @@ public class TouchscreenGestureSettings extends SettingsPreferenceFragment
             mContext = context;
             mGesture = gesture;
 
+            // The first entry does nothing, which is picking no action here
+            final CharSequence[] entries = context.getResources().getTextArray(
+                    R.array.touchscreen_gesture_action_entries);
+            final CharSequence[] values = context.getResources().getTextArray(
+                    R.array.touchscreen_gesture_action_values);
+            setEntries(Arrays.copyOfRange(entries, 1, entries.length));
+            setEntryValues(Arrays.copyOfRange(values, 1, values.length));
+
             setKey(buildPreferenceKey(gesture));
-            setEntries(R.array.touchscreen_gesture_action_entries);
-            setEntryValues(R.array.touchscreen_gesture_action_values);
-            setDefaultValue(String.valueOf(defaultAction));
+            setDefaultValue(toValues(String.valueOf(defaultAction)));
             setIcon(getIconDrawableResourceForAction(defaultAction));
 
-            setSummary("%s");
             setDialogTitle(R.string.touchscreen_gesture_action_dialog_title);
             setTitle(ResourceUtils.getLocalizedString(
                     context.getResources(), gesture.name, TOUCHSCREEN_GESTURE_TITLE));
         }
 
         @Override
+        @SuppressWarnings("unchecked")
         public boolean callChangeListener(final Object newValue) {
-            final int action = Integer.parseInt(String.valueOf(newValue));
+            final boolean enabled = !((Set<String>) newValue).isEmpty();
             final LineageHardwareManager manager = LineageHardwareManager.getInstance(mContext);
-            if (!manager.setTouchscreenGestureEnabled(mGesture, action > 0)) {
+            if (!manager.setTouchscreenGestureEnabled(mGesture, enabled)) {
                 return false;
             }
             return super.callChangeListener(newValue);
         }
 
         @Override
-        protected boolean persistString(String value) {
-            if (!super.persistString(value)) {
+        protected Set<String> getPersistedStringSet(Set<String> defaultReturnValue) {
+            final String macro = getPersistedString(null);
+            return macro != null ? toValues(macro) : defaultReturnValue;
+        }
+
+        @Override
+        protected boolean persistStringSet(Set<String> values) {
+            final int[] actions = toActions(values);
+            if (!persistString(ActionTable.formatActions(actions))) {
                 return false;
             }
-            final int action = Integer.parseInt(String.valueOf(value));
-            setIcon(getIconDrawableResourceForAction(action));
+            setIcon(getIconDrawableResourceForAction(actions.length > 0 ? actions[0] : 0));
+            setSummary(getSummary(actions));
             sendUpdateBroadcast(mContext, mTouchscreenGestures);
             return true;
         }
 
+        private Set<String> toValues(final String macro) {
+            final Set<String> values = new ArraySet<>();
+            for (final int action : ActionTable.parseActions(macro)) {
+                if (action > 0) {
+                    values.add(String.valueOf(action));
+                }
+            }
+            return values;
+        }
+
+        private int[] toActions(final Set<String> values) {
+            final List<Integer> actions = new ArrayList<>();
+            for (final CharSequence value : getEntryValues()) {
+                if (values.contains(value.toString())) {
+                    actions.add(Integer.parseInt(value.toString()));
+                }
+            }
+            return actions.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private CharSequence getSummary(final int[] actions) {
+            if (actions.length == 0) {
+                return mContext.getString(R.string.touchscreen_gesture_action_do_nothing);
+            }
+            final List<CharSequence> labels = new ArrayList<>();
+            for (final int action : actions) {
+                final int index = findIndexOfValue(String.valueOf(action));
+                if (index >= 0) {
+                    labels.add(getEntries()[index]);
+                }
+            }
+            return ListFormatter.getInstance().format(labels);
+        }
+
         private int getIconDrawableResourceForAction(final int action) {
             switch (action) {
                 case TouchscreenGestureConstants.ACTION_CAMERA:
@@ -138,6 +194,15 @@ public class TouchscreenGestureSettings extends SettingsPreferenceFragment
         }
     }
 
+    /**
+     * Applies the stored gesture states to the HAL and sends the mapping to the key handler.
+     * <p>
+     * The stored actions are read once, for both. Every gesture is written to the HAL: it
+     * can't report its current state nor take several gestures at once, and it starts over
+     * whenever it restarts, so no write can be proven unnecessary. These are blocking HAL
+     * calls, so this must not run on the main thread.
+     */
+    @WorkerThread
     public static void restoreTouchscreenGestureStates(final Context context) {
         if (!isTouchscreenGesturesSupported(context)) {
             return;
@@ -145,12 +210,13 @@ public class TouchscreenGestureSettings extends SettingsPreferenceFragment
 
         final LineageHardwareManager manager = LineageHardwareManager.getInstance(context);
         final TouchscreenGesture[] gestures = manager.getTouchscreenGestures();
-        final int[] actionList = buildActionList(context, gestures);
+        final String[] macroList = buildMacroList(context, gestures);
+        final int[] actionList = buildActionList(gestures, macroList);
         for (final TouchscreenGesture gesture : gestures) {
             manager.setTouchscreenGestureEnabled(gesture, actionList[gesture.id] > 0);
         }
 
-        sendUpdateBroadcast(context, gestures);
+        sendUpdateBroadcast(context, gestures, actionList, macroList);
     }
 
     private static boolean isTouchscreenGesturesSupported(final Context context) {
@@ -171,15 +237,31 @@ public class TouchscreenGestureSettings extends SettingsPreferenceFragment
         return filledDefaultActions;
     }
 
-    private static int[] buildActionList(final Context context,
-            final TouchscreenGesture[] gestures) {
+    private static int[] buildActionList(final TouchscreenGesture[] gestures,
+            final String[] macros) {
         final int[] result = new int[gestures.length];
+        for (final TouchscreenGesture gesture : gestures) {
+            // Gestures running several actions are represented by their first assigned one,
+            // so they stay enabled in the HAL as long as any of their actions is set
+            for (final int action : ActionTable.parseActions(macros[gesture.id])) {
+                if (action > 0) {
+                    result[gesture.id] = action;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String[] buildMacroList(final Context context,
+            final TouchscreenGesture[] gestures) {
+        final String[] result = new String[gestures.length];
         final int[] defaultActions = getDefaultGestureActions(context, gestures);
         final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
         for (final TouchscreenGesture gesture : gestures) {
             final String key = buildPreferenceKey(gesture);
             final String defaultValue = String.valueOf(defaultActions[gesture.id]);
-            result[gesture.id] = Integer.parseInt(prefs.getString(key, defaultValue));
+            result[gesture.id] = prefs.getString(key, defaultValue);
         }
         return result;
     }
@@ -190,14 +272,20 @@ public class TouchscreenGestureSettings extends SettingsPreferenceFragment
 
     private static void sendUpdateBroadcast(final Context context,
             final TouchscreenGesture[] gestures) {
+        final String[] macros = buildMacroList(context, gestures);
+        sendUpdateBroadcast(context, gestures, buildActionList(gestures, macros), macros);
+    }
+
+    private static void sendUpdateBroadcast(final Context context,
+            final TouchscreenGesture[] gestures, final int[] actions, final String[] macros) {
         final Intent intent = new Intent(TouchscreenGestureConstants.UPDATE_PREFS_ACTION);
         final int[] keycodes = new int[gestures.length];
-        final int[] actions = buildActionList(context, gestures);
         for (final TouchscreenGesture gesture : gestures) {
             keycodes[gesture.id] = gesture.keycode;
         }
         intent.putExtra(TouchscreenGestureConstants.UPDATE_EXTRA_KEYCODE_MAPPING, keycodes);
         intent.putExtra(TouchscreenGestureConstants.UPDATE_EXTRA_ACTION_MAPPING, actions);
+        intent.putExtra(TouchscreenGestureConstants.UPDATE_EXTRA_MACRO_MAPPING, macros);
         intent.setFlags(Intent.FLAG_RECEIVER_REGISTERED_ONLY);
         context.sendBroadcastAsUser(intent, UserHandle.CURRENT);
     }
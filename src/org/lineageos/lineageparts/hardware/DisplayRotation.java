@@ -6,6 +6,7 @@
 
 package org.lineageos.lineageparts.hardware;
 
+import android.content.Context;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.UserHandle;
@@ -23,6 +24,8 @@ import com.android.settingslib.widget.OnMainSwitchChangeListener;
 import org.lineageos.lineageparts.R;
 import org.lineageos.lineageparts.SettingsPreferenceFragment;
 
+import java.util.List;
+
 public class DisplayRotation extends SettingsPreferenceFragment
         implements OnMainSwitchChangeListener {
     private static final String TAG = "DisplayRotation";
@@ -131,10 +134,18 @@ public class DisplayRotation extends SettingsPreferenceFragment
                 !mAccelerometer.isChecked());
     }
 
-    public static final SummaryProvider SUMMARY_PROVIDER = (context, key) -> {
-        if (RotationPolicy.isRotationLocked(context)) {
-            return context.getString(R.string.display_rotation_disabled);
+    public static final SummaryProvider SUMMARY_PROVIDER = new SummaryProvider() {
+        @Override
+        public String getSummary(Context context, String key) {
+            if (RotationPolicy.isRotationLocked(context)) {
+                return context.getString(R.string.display_rotation_disabled);
+            }
+            return context.getString(R.string.display_rotation_enabled);
+        }
+
+        @Override
+        public List<Uri> getSummaryUris() {
+            return List.of(Settings.System.getUriFor(Settings.System.ACCELEROMETER_ROTATION));
         }
-        return context.getString(R.string.display_rotation_enabled);
     };
 }
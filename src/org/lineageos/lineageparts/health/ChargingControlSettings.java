@@ -7,6 +7,7 @@ package org.lineageos.lineageparts.health;
 
 import android.content.Context;
 import android.content.res.Resources;
+import android.net.Uri;
 import android.os.Bundle;
 import android.util.ArraySet;
 import android.view.Menu;
@@ -18,6 +19,7 @@ import androidx.preference.PreferenceScreen;
 
 import java.lang.reflect.Array;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Stream;
 
@@ -217,14 +219,23 @@ public class ChargingControlSettings extends SettingsPreferenceFragment implemen
                 (CharSequence[]) Array.newInstance(CharSequence.class, size));
     }
 
-    public static final SummaryProvider SUMMARY_PROVIDER = (context, key) -> {
-        if (HealthInterface.isChargingControlSupported(context)) {
-            HealthInterface healthInterface = HealthInterface.getInstance(context);
-            if (healthInterface.getEnabled()) {
-                return context.getString(R.string.enabled);
+    public static final SummaryProvider SUMMARY_PROVIDER = new SummaryProvider() {
+        @Override
+        public String getSummary(Context context, String key) {
+            if (HealthInterface.isChargingControlSupported(context)) {
+                HealthInterface healthInterface = HealthInterface.getInstance(context);
+                if (healthInterface.getEnabled()) {
+                    return context.getString(R.string.enabled);
+                }
             }
+            return context.getString(R.string.disabled);
+        }
+
+        @Override
+        public List<Uri> getSummaryUris() {
+            return List.of(LineageSettings.System.getUriFor(
+                    LineageSettings.System.CHARGING_CONTROL_ENABLED));
         }
-        return context.getString(R.string.disabled);
     };
 
     public static final Searchable.SearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
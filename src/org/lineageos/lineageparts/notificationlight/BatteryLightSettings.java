@@ -9,6 +9,7 @@ package org.lineageos.lineageparts.notificationlight;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.res.Resources;
+import android.net.Uri;
 import android.os.Bundle;
 import android.util.ArraySet;
 import android.view.Menu;
@@ -29,6 +30,7 @@ import lineageos.preference.LineageSystemSettingMainSwitchPreference;
 import lineageos.preference.LineageSystemSettingSwitchPreference;
 import lineageos.providers.LineageSettings;
 
+import java.util.List;
 import java.util.Set;
 
 public class BatteryLightSettings extends SettingsPreferenceFragment implements
@@ -269,12 +271,21 @@ public class BatteryLightSettings extends SettingsPreferenceFragment implements
         return true;
     }
 
-    public static final SummaryProvider SUMMARY_PROVIDER = (context, key) -> {
-        if (LineageSettings.System.getInt(context.getContentResolver(),
-                LineageSettings.System.BATTERY_LIGHT_ENABLED, 1) == 1) {
-            return context.getString(R.string.enabled);
+    public static final SummaryProvider SUMMARY_PROVIDER = new SummaryProvider() {
+        @Override
+        public String getSummary(Context context, String key) {
+            if (LineageSettings.System.getInt(context.getContentResolver(),
+                    LineageSettings.System.BATTERY_LIGHT_ENABLED, 1) == 1) {
+                return context.getString(R.string.enabled);
+            }
+            return context.getString(R.string.disabled);
+        }
+
+        @Override
+        public List<Uri> getSummaryUris() {
+            return List.of(LineageSettings.System.getUriFor(
+                    LineageSettings.System.BATTERY_LIGHT_ENABLED));
         }
-        return context.getString(R.string.disabled);
     };
 
     public static final Searchable.SearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
@@ -14,6 +14,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
 import android.provider.Settings;
 import android.telephony.TelephonyManager;
@@ -583,16 +584,25 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
 
     }
 
-    public static final SummaryProvider SUMMARY_PROVIDER = (context, key) -> {
-        if (Settings.System.getInt(context.getContentResolver(),
-                NOTIFICATION_LIGHT_PULSE, 1) == 1) {
-            if (LineageSettings.System.getInt(context.getContentResolver(),
-                    NOTIFICATION_LIGHT_COLOR_AUTO, 1) == 1) {
-                return context.getString(R.string.notification_light_automagic_summary);
+    public static final SummaryProvider SUMMARY_PROVIDER = new SummaryProvider() {
+        @Override
+        public String getSummary(Context context, String key) {
+            if (Settings.System.getInt(context.getContentResolver(),
+                    NOTIFICATION_LIGHT_PULSE, 1) == 1) {
+                if (LineageSettings.System.getInt(context.getContentResolver(),
+                        NOTIFICATION_LIGHT_COLOR_AUTO, 1) == 1) {
+                    return context.getString(R.string.notification_light_automagic_summary);
+                }
+                return context.getString(R.string.enabled);
             }
-            return context.getString(R.string.enabled);
+            return context.getString(R.string.disabled);
+        }
+
+        @Override
+        public List<Uri> getSummaryUris() {
+            return List.of(Settings.System.getUriFor(NOTIFICATION_LIGHT_PULSE),
+                    LineageSettings.System.getUriFor(NOTIFICATION_LIGHT_COLOR_AUTO));
         }
-        return context.getString(R.string.disabled);
     };
 
     public static final Searchable.SearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
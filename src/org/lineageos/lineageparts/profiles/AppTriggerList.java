@@ -0,0 +1,268 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Kusuma
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.profiles;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.provider.Settings;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import org.lineageos.lineageparts.utils.PartsExecutor;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In memory model of {@link Settings.System#PROFILE_APP_TRIGGER_LIST}, the JSON object
+ * mapping profile UUIDs to the packages triggering them.
+ * <p>
+ * Edits are only kept in memory until {@link #save} is called. Saving merges the edited
+ * profiles into the current content of the setting, so changes made meanwhile to other
+ * profiles are kept.
+ * <p>
+ * A reverse index from package to profiles is kept alongside, so finding the profiles an
+ * app triggers does not depend on the number of profiles.
+ * <p>
+ * A single instance is shared by the process, and kept in sync with changes other
+ * components make to the setting.
+ */
+public class AppTriggerList {
+
+    private static final String TAG = "AppTriggerList";
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static AppTriggerList sInstance;
+
+    private final Map<String, Set<String>> mPackagesByProfile = new ArrayMap<>();
+    private final Map<String, Set<String>> mProfilesByPackage = new ArrayMap<>();
+    private final Set<String> mEditedProfiles = new ArraySet<>();
+
+    // Saves must not interleave, or one could write back what the other read
+    private final Object mSaveLock = new Object();
+
+    private AppTriggerList() {
+    }
+
+    /**
+     * Returns the list shared by the process, loading it on first use.
+     */
+    public static synchronized AppTriggerList get(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            final AppTriggerList list = new AppTriggerList();
+            list.mPackagesByProfile.putAll(read(appContext));
+            list.rebuildIndex();
+            appContext.getContentResolver().registerContentObserver(
+                    Settings.System.getUriFor(Settings.System.PROFILE_APP_TRIGGER_LIST),
+                    false, new ContentObserver(null) {
+                        @Override
+                        public void onChange(boolean selfChange) {
+                            PartsExecutor.executeCritical(PartsExecutor.Lane.IO,
+                                    () -> list.reload(appContext));
+                        }
+                    });
+            sInstance = list;
+        }
+        return sInstance;
+    }
+
+    public synchronized Set<String> getProfiles() {
+        return new ArraySet<>(mPackagesByProfile.keySet());
+    }
+
+    public synchronized Set<String> getPackages(String profileUuid) {
+        final Set<String> packages = mPackagesByProfile.get(profileUuid);
+        return packages != null ? new ArraySet<>(packages) : new ArraySet<>();
+    }
+
+    /**
+     * Returns whether the package triggers a profile other than the given one. Packages are
+     * meant to belong to a single profile, but the setting allows more.
+     */
+    public synchronized boolean isSelectedByOtherProfile(String packageName,
+            String profileUuid) {
+        final Set<String> profiles = mProfilesByPackage.get(packageName);
+        if (profiles == null) {
+            return false;
+        }
+        return profiles.size() > (profiles.contains(profileUuid) ? 1 : 0);
+    }
+
+    public synchronized void setPackageSelected(String profileUuid, String packageName,
+            boolean selected) {
+        Set<String> packages = mPackagesByProfile.get(profileUuid);
+        if (packages == null) {
+            packages = new ArraySet<>();
+            mPackagesByProfile.put(profileUuid, packages);
+        }
+        final boolean changed = selected ? packages.add(packageName)
+                : packages.remove(packageName);
+        if (!changed) {
+            return;
+        }
+        mEditedProfiles.add(profileUuid);
+
+        if (selected) {
+            addToIndex(packageName, profileUuid);
+        } else {
+            final Set<String> profiles = mProfilesByPackage.get(packageName);
+            if (profiles != null && profiles.remove(profileUuid) && profiles.isEmpty()) {
+                mProfilesByPackage.remove(packageName);
+            }
+        }
+    }
+
+    public synchronized boolean hasChanges() {
+        return !mEditedProfiles.isEmpty();
+    }
+
+    /**
+     * Writes the edited profiles back to the setting. Does blocking IPC, so it should
+     * not be called on the main thread.
+     */
+    public void save(Context context) {
+        synchronized (mSaveLock) {
+            saveLocked(context);
+        }
+    }
+
+    private void saveLocked(Context context) {
+        final Map<String, Set<String>> edits = new ArrayMap<>();
+        synchronized (this) {
+            if (DEBUG) {
+                validate();
+            }
+            for (String profileUuid : mEditedProfiles) {
+                edits.put(profileUuid, new ArraySet<>(mPackagesByProfile.get(profileUuid)));
+            }
+            mEditedProfiles.clear();
+        }
+        if (edits.isEmpty()) {
+            return;
+        }
+
+        // Merge with the current content, other profiles may have changed since we loaded
+        final Map<String, Set<String>> current = read(context);
+        current.putAll(edits);
+        apply(current);
+
+        try {
+            final JSONObject json = new JSONObject();
+            for (Map.Entry<String, Set<String>> entry : current.entrySet()) {
+                json.put(entry.getKey(), new JSONArray(entry.getValue()));
+            }
+            Settings.System.putString(context.getContentResolver(),
+                    Settings.System.PROFILE_APP_TRIGGER_LIST, json.toString());
+            Log.d(TAG, "Saved app triggers of " + edits.size() + " profile(s)");
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to save app triggers", e);
+        }
+    }
+
+    private void reload(Context context) {
+        synchronized (mSaveLock) {
+            apply(read(context));
+        }
+    }
+
+    /**
+     * Replaces the profiles that have no pending edits with the given content.
+     */
+    private synchronized void apply(Map<String, Set<String>> current) {
+        mPackagesByProfile.keySet().removeIf(profileUuid ->
+                !current.containsKey(profileUuid) && !mEditedProfiles.contains(profileUuid));
+        for (Map.Entry<String, Set<String>> entry : current.entrySet()) {
+            if (!mEditedProfiles.contains(entry.getKey())) {
+                mPackagesByProfile.put(entry.getKey(), new ArraySet<>(entry.getValue()));
+            }
+        }
+        rebuildIndex();
+    }
+
+    /**
+     * Checks the incrementally updated index against the packages of every profile,
+     * and rebuilds it if they disagree.
+     *
+     * @return whether the index was consistent
+     */
+    public synchronized boolean validate() {
+        int selections = 0;
+        for (Map.Entry<String, Set<String>> entry : mPackagesByProfile.entrySet()) {
+            for (String packageName : entry.getValue()) {
+                final Set<String> profiles = mProfilesByPackage.get(packageName);
+                if (profiles == null || !profiles.contains(entry.getKey())) {
+                    Log.w(TAG, "Index out of sync for " + packageName + ", rebuilding");
+                    rebuildIndex();
+                    return false;
+                }
+                selections++;
+            }
+        }
+        // Every selection is indexed, so any extra entry is stale
+        int indexed = 0;
+        for (Set<String> profiles : mProfilesByPackage.values()) {
+            indexed += profiles.size();
+        }
+        if (indexed != selections) {
+            Log.w(TAG, "Index has stale packages, rebuilding");
+            rebuildIndex();
+            return false;
+        }
+        return true;
+    }
+
+    private void rebuildIndex() {
+        mProfilesByPackage.clear();
+        for (Map.Entry<String, Set<String>> entry : mPackagesByProfile.entrySet()) {
+            for (String packageName : entry.getValue()) {
+                addToIndex(packageName, entry.getKey());
+            }
+        }
+    }
+
+    private void addToIndex(String packageName, String profileUuid) {
+        Set<String> profiles = mProfilesByPackage.get(packageName);
+        if (profiles == null) {
+            profiles = new ArraySet<>();
+            mProfilesByPackage.put(packageName, profiles);
+        }
+        profiles.add(profileUuid);
+    }
+
+    private static Map<String, Set<String>> read(Context context) {
+        final Map<String, Set<String>> result = new ArrayMap<>();
+        final String jsonString = Settings.System.getString(context.getContentResolver(),
+                Settings.System.PROFILE_APP_TRIGGER_LIST);
+        if (TextUtils.isEmpty(jsonString)) {
+            return result;
+        }
+
+        try {
+            final JSONObject json = new JSONObject(jsonString);
+            final Iterator<String> keys = json.keys();
+            while (keys.hasNext()) {
+                final String profileUuid = keys.next();
+                final JSONArray appsArray = json.getJSONArray(profileUuid);
+                final Set<String> packages = new ArraySet<>(appsArray.length());
+                for (int i = 0; i < appsArray.length(); i++) {
+                    packages.add(appsArray.getString(i).trim());
+                }
+                result.put(profileUuid, packages);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to parse app triggers", e);
+        }
+        return result;
+    }
+}
@@ -20,8 +20,6 @@ import android.media.AudioManager;
 import android.net.wifi.WifiManager;
 import android.nfc.NfcManager;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.provider.Settings;
 import android.text.Editable;
 import android.text.TextUtils;
@@ -75,13 +73,12 @@ import org.lineageos.lineageparts.profiles.actions.item.RingModeItem;
 import org.lineageos.lineageparts.profiles.actions.item.TriggerItem;
 import org.lineageos.lineageparts.profiles.actions.item.VolumeStreamItem;
 import org.lineageos.lineageparts.utils.DeviceUtils;
+import org.lineageos.lineageparts.utils.PartsExecutor;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import static lineageos.profiles.ConnectionSettings.PROFILE_CONNECTION_BLUETOOTH;
 import static lineageos.profiles.ConnectionSettings.PROFILE_CONNECTION_LOCATION;
@@ -400,13 +397,12 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
     }
 
     private void fillProfileFromCurrentSettings() {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Handler handler = new Handler(Looper.getMainLooper());
-        executor.execute(() -> {
-            fillProfileWithCurrentSettings(getActivity(), mProfile);
+        final Context context = requireActivity();
+        PartsExecutor.execute(getLifecycle(), PartsExecutor.Lane.IO, () -> {
+            fillProfileWithCurrentSettings(context, mProfile);
             updateProfile();
-            handler.post(this::rebuildItemList);
-        });
+            return null;
+        }, result -> rebuildItemList());
     }
 
     public static void fillProfileWithCurrentSettings(Context context, Profile profile) {
@@ -9,59 +9,296 @@ import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.text.format.DateFormat;
 import android.util.Log;
 
-import lineageos.app.Profile;
-
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+/**
+ * Schedules the time triggers of all profiles.
+ * <p>
+ * The triggers of every profile are kept in a single agenda sorted by time of day, and
+ * only one alarm is armed, for the earliest upcoming entry. When it fires,
+ * {@link TimeTriggerReceiver} sends the trigger of every profile due since the armed time,
+ * so a late alarm doesn't skip anything, and arms the alarm for the next entry.
+ * <p>
+ * Trigger times are stored as the minute of the day, and only formatted for display.
+ */
 public class TimeProfileUtils {
 
     private static final String TAG = "TimeProfileUtils";
-    private static final String INTENT_ACTION_PROFILE_TIME_TRIGGER = 
+    private static final String INTENT_ACTION_PROFILE_TIME_TRIGGER =
             "lineageos.extra.platform.intent.action.PROFILE_TIME_TRIGGER";
+    private static final String EXTRA_PROFILE_UUID = "PROFILE_UUID";
+
+    static final String ACTION_TIME_TRIGGER_ALARM =
+            "org.lineageos.lineageparts.profiles.TIME_TRIGGER_ALARM";
+    static final String EXTRA_MINUTE_OF_DAY = "minute_of_day";
+
+    public static final String PREFS_NAME = "profile_prefs";
+    public static final int MAX_ALARMS = 5;
+    private static final String PREF_SELECTED_TIME_PREFIX = "selected_time_";
+    private static final String PREF_LEGACY_ALARMS_CANCELLED = "legacy_time_alarms_cancelled";
+    private static final String PREF_TIMES_MIGRATED = "time_triggers_minute_of_day";
+    // Start of the last minute whose triggers were sent, in wall clock milliseconds
+    private static final String PREF_LAST_SENT_MINUTE = "time_triggers_last_sent_minute";
+
+    public static String getTimeKey(UUID profileUuid, int alarmIndex) {
+        return PREF_SELECTED_TIME_PREFIX + profileUuid.toString() + "_" + alarmIndex;
+    }
+
+    /**
+     * Returns the preferences holding the time triggers.
+     */
+    public static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns the stored trigger times of a profile as minutes of the day, indexed by alarm,
+     * with -1 for free slots. Times older versions stored are reported as free until they
+     * get migrated, and are overwritten if the slot is reused meanwhile.
+     */
+    public static int[] getTimes(SharedPreferences prefs, UUID profileUuid) {
+        final int[] times = new int[MAX_ALARMS];
+        if (prefs.getBoolean(PREF_TIMES_MIGRATED, false)) {
+            for (int i = 0; i < MAX_ALARMS; i++) {
+                times[i] = prefs.getInt(getTimeKey(profileUuid, i), -1);
+            }
+            return times;
+        }
+        // Slots may still hold strings, which the typed getter would throw on
+        final Map<String, ?> all = prefs.getAll();
+        for (int i = 0; i < MAX_ALARMS; i++) {
+            final Object value = all.get(getTimeKey(profileUuid, i));
+            times[i] = value instanceof Integer ? (Integer) value : -1;
+        }
+        return times;
+    }
+
+    /**
+     * Formats a trigger time for display, following the 12/24h setting of the user.
+     */
+    public static String formatTime(Context context, int minuteOfDay) {
+        final Calendar time = Calendar.getInstance();
+        time.set(Calendar.HOUR_OF_DAY, minuteOfDay / 60);
+        time.set(Calendar.MINUTE, minuteOfDay % 60);
+        return DateFormat.getTimeFormat(context).format(time.getTime());
+    }
+
+    /**
+     * Rebuilds the agenda from the stored triggers and arms the alarm for its earliest
+     * upcoming entry, or cancels it if there is none.
+     */
+    public static void scheduleNextAlarm(Context context) {
+        final AlarmManager alarmManager = context.getSystemService(AlarmManager.class);
+        if (alarmManager == null) {
+            return;
+        }
+        final SharedPreferences prefs = getPrefs(context);
+        final List<Entry> agenda = getAgenda(prefs);
+        cancelLegacyAlarms(context, alarmManager, prefs);
+
+        if (agenda.isEmpty()) {
+            alarmManager.cancel(getAlarmIntent(context, 0));
+            Log.i(TAG, "No time triggers, alarm canceled");
+            return;
+        }
+
+        final Calendar now = getMinuteStart();
+        final int nowMinute = now.get(Calendar.HOUR_OF_DAY) * 60 + now.get(Calendar.MINUTE);
+        // Entries of the current minute are still due, unless they were sent already
+        final boolean nowSent =
+                prefs.getLong(PREF_LAST_SENT_MINUTE, 0) == now.getTimeInMillis();
+        final int firstMinute = nowSent ? nowMinute + 1 : nowMinute;
+        Entry next = agenda.get(0);
+        for (Entry entry : agenda) {
+            if (entry.mMinuteOfDay >= firstMinute) {
+                next = entry;
+                break;
+            }
+        }
+
+        final Calendar time = (Calendar) now.clone();
+        time.set(Calendar.HOUR_OF_DAY, next.mMinuteOfDay / 60);
+        time.set(Calendar.MINUTE, next.mMinuteOfDay % 60);
+        if (next.mMinuteOfDay < firstMinute) {
+            time.add(Calendar.DAY_OF_YEAR, 1);
+        }
 
-    /*
-     * Schedules an alarm to trigger at a specific time.
+        alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP,
+                time.getTimeInMillis(), getAlarmIntent(context, next.mMinuteOfDay));
+        Log.i(TAG, "Next time trigger of " + agenda.size() + " scheduled at "
+                + time.getTime());
+    }
+
+    /**
+     * Sends the trigger of every profile due from the given minute of the day, the one
+     * the alarm was armed for, up to and including the current minute.
+     */
+    static void sendDueTriggers(Context context, int armedMinute) {
+        if (armedMinute < 0) {
+            return;
+        }
+        final SharedPreferences prefs = getPrefs(context);
+        final Calendar now = getMinuteStart();
+        final int nowMinute = now.get(Calendar.HOUR_OF_DAY) * 60 + now.get(Calendar.MINUTE);
+        for (Entry entry : getAgenda(prefs)) {
+            // An alarm delivered after midnight still covers the end of the previous day
+            final boolean due = armedMinute <= nowMinute
+                    ? entry.mMinuteOfDay >= armedMinute && entry.mMinuteOfDay <= nowMinute
+                    : entry.mMinuteOfDay >= armedMinute || entry.mMinuteOfDay <= nowMinute;
+            if (!due) {
+                continue;
+            }
+            final Intent intent = new Intent(INTENT_ACTION_PROFILE_TIME_TRIGGER);
+            intent.putExtra(EXTRA_PROFILE_UUID, entry.mProfileUuid);
+            context.sendBroadcast(intent);
+            Log.i(TAG, "Time trigger sent for profile UUID: " + entry.mProfileUuid);
+        }
+        prefs.edit().putLong(PREF_LAST_SENT_MINUTE, now.getTimeInMillis()).apply();
+    }
+
+    /**
+     * Converts the trigger times older versions stored as formatted strings, unless that
+     * was done already. Does disk IO, so it should not be called on the main thread.
+     */
+    static void migrateTimes(Context context) {
+        final SharedPreferences prefs = getPrefs(context);
+        if (!prefs.getBoolean(PREF_TIMES_MIGRATED, false)) {
+            migrateTimes(prefs);
+        }
+    }
+
+    private static Calendar getMinuteStart() {
+        final Calendar now = Calendar.getInstance();
+        now.set(Calendar.SECOND, 0);
+        now.set(Calendar.MILLISECOND, 0);
+        return now;
+    }
+
+    private static List<Entry> getAgenda(SharedPreferences prefs) {
+        final List<Entry> agenda = new ArrayList<>();
+        for (Map.Entry<String, ?> pref : prefs.getAll().entrySet()) {
+            final String key = pref.getKey();
+            final int indexStart = key.lastIndexOf('_');
+            if (!key.startsWith(PREF_SELECTED_TIME_PREFIX) || indexStart < 0
+                    || !(pref.getValue() instanceof Integer)) {
+                continue;
+            }
+            agenda.add(new Entry((Integer) pref.getValue(),
+                    key.substring(PREF_SELECTED_TIME_PREFIX.length(), indexStart)));
+        }
+        agenda.sort((a, b) -> Integer.compare(a.mMinuteOfDay, b.mMinuteOfDay));
+        return agenda;
+    }
+
+    private static void migrateTimes(SharedPreferences prefs) {
+        final SharedPreferences.Editor editor = prefs.edit();
+        for (Map.Entry<String, ?> pref : prefs.getAll().entrySet()) {
+            final String key = pref.getKey();
+            if (!key.startsWith(PREF_SELECTED_TIME_PREFIX)
+                    || !(pref.getValue() instanceof String)) {
+                continue;
+            }
+            final int minuteOfDay = parseTime((String) pref.getValue());
+            if (minuteOfDay < 0) {
+                Log.w(TAG, "Dropping unparsable time trigger " + key);
+                editor.remove(key);
+            } else {
+                editor.putInt(key, minuteOfDay);
+            }
+        }
+        editor.putBoolean(PREF_TIMES_MIGRATED, true);
+        // Committed, so readers never see the old format once this returns
+        editor.commit();
+    }
+
+    /**
+     * Parses a trigger time stored either as "HH:mm" or as "h:mm AM/PM".
+     *
+     * @return the minute of the day, or -1 if the time can't be parsed
      */
-    public static void scheduleAlarm(Context context, Calendar time, Profile profile, int alarmIndex) {
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        Intent intent = new Intent(INTENT_ACTION_PROFILE_TIME_TRIGGER);
-        intent.putExtra("PROFILE_UUID", profile.getUuid().toString());
-        String uniqueCode = alarmIndex + profile.getUuid().toString();
-        int requestCode = uniqueCode.hashCode();
-
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                context, requestCode, intent, PendingIntent.FLAG_UPDATE_CURRENT | 
-                PendingIntent.FLAG_IMMUTABLE);
-
-        if (alarmManager != null) {
-            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, time.getTimeInMillis(), pendingIntent);
-            Log.i(TAG, "Alarm number " + alarmIndex + " scheduled for profile UUID: " + 
-                    profile.getUuid().toString() + " at " + time.getTime());
+    private static int parseTime(String timeString) {
+        try {
+            final String[] parts = timeString.trim().split(" ");
+            final String[] timeParts = parts[0].split(":");
+            int hour = Integer.parseInt(timeParts[0]);
+            final int minute = Integer.parseInt(timeParts[1]);
+            if (parts.length > 1) {
+                if (parts[1].equals("PM") && hour < 12) {
+                    hour += 12;
+                } else if (parts[1].equals("AM") && hour == 12) {
+                    hour = 0;
+                }
+            }
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+                return -1;
+            }
+            return hour * 60 + minute;
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return -1;
         }
     }
 
-    /*
-     * Cancels the scheduled alarm.
+    private static PendingIntent getAlarmIntent(Context context, int minuteOfDay) {
+        final Intent intent = new Intent(ACTION_TIME_TRIGGER_ALARM);
+        intent.setClass(context, TimeTriggerReceiver.class);
+        intent.putExtra(EXTRA_MINUTE_OF_DAY, minuteOfDay);
+        return PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    /**
+     * Cancels the alarms older versions armed for every trigger, so they don't fire
+     * along with the agenda until the next reboot.
+     * <p>
+     * Alarms are found from the key of each trigger, whatever format its time is stored
+     * in. This is only recorded as done once the times are migrated, as triggers added
+     * by older versions may still show up until then.
      */
-    public static void cancelAlarm(Context context, Profile profile, int alarmIndex) {
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        Intent intent = new Intent(INTENT_ACTION_PROFILE_TIME_TRIGGER);
-        intent.putExtra("PROFILE_UUID", profile.getUuid().toString());
-        String uniqueCode = alarmIndex + profile.getUuid().toString();
-        int requestCode = uniqueCode.hashCode();
-
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                context, requestCode, intent, PendingIntent.FLAG_UPDATE_CURRENT | 
-                PendingIntent.FLAG_IMMUTABLE);
-
-        if (alarmManager != null) {
-            alarmManager.cancel(pendingIntent);
-            Log.i(TAG, "Alarm number " + alarmIndex + " canceled for profile UUID: " + 
-                    profile.getUuid().toString());
+    private static void cancelLegacyAlarms(Context context, AlarmManager alarmManager,
+            SharedPreferences prefs) {
+        if (prefs.getBoolean(PREF_LEGACY_ALARMS_CANCELLED, false)) {
+            return;
+        }
+        final boolean migrated = prefs.getBoolean(PREF_TIMES_MIGRATED, false);
+        for (String key : prefs.getAll().keySet()) {
+            final int indexStart = key.lastIndexOf('_');
+            if (!key.startsWith(PREF_SELECTED_TIME_PREFIX)
+                    || indexStart < PREF_SELECTED_TIME_PREFIX.length()) {
+                continue;
+            }
+            final String profileUuid =
+                    key.substring(PREF_SELECTED_TIME_PREFIX.length(), indexStart);
+            final String alarmIndex = key.substring(indexStart + 1);
+            final Intent intent = new Intent(INTENT_ACTION_PROFILE_TIME_TRIGGER);
+            intent.putExtra(EXTRA_PROFILE_UUID, profileUuid);
+            final PendingIntent pendingIntent = PendingIntent.getBroadcast(context,
+                    (alarmIndex + profileUuid).hashCode(), intent,
+                    PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+            if (pendingIntent != null) {
+                alarmManager.cancel(pendingIntent);
+                pendingIntent.cancel();
+            }
+        }
+        if (migrated) {
+            prefs.edit().putBoolean(PREF_LEGACY_ALARMS_CANCELLED, true).apply();
         }
     }
 
+    private static class Entry {
+        final int mMinuteOfDay;
+        final String mProfileUuid;
+
+        Entry(int minuteOfDay, String profileUuid) {
+            mMinuteOfDay = minuteOfDay;
+            mProfileUuid = profileUuid;
+        }
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Kusuma
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.profiles;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import org.lineageos.lineageparts.utils.PartsExecutor;
+
+/**
+ * Sends the due profile time triggers when the agenda alarm fires, and re-arms it.
+ * The agenda is also rebuilt after boot and whenever the wall clock or timezone changes,
+ * since alarms don't survive either. Trigger times stored by older versions are migrated
+ * after boot and after an update, before the settings UI can read them.
+ */
+public class TimeTriggerReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final boolean alarm =
+                TimeProfileUtils.ACTION_TIME_TRIGGER_ALARM.equals(intent.getAction());
+        final int minuteOfDay = intent.getIntExtra(TimeProfileUtils.EXTRA_MINUTE_OF_DAY, -1);
+        final boolean migrate = Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())
+                || Intent.ACTION_MY_PACKAGE_REPLACED.equals(intent.getAction());
+
+        final PendingResult pendingResult = goAsync();
+        PartsExecutor.executeCritical(PartsExecutor.Lane.IO, () -> {
+            try {
+                if (migrate) {
+                    TimeProfileUtils.migrateTimes(context);
+                }
+                if (alarm) {
+                    TimeProfileUtils.sendDueTriggers(context, minuteOfDay);
+                }
+                TimeProfileUtils.scheduleNextAlarm(context);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+}
@@ -4,6 +4,7 @@
  */
 package org.lineageos.lineageparts.profiles.triggers;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
@@ -11,8 +12,9 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.provider.Settings;
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -26,28 +28,49 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import lineageos.app.Profile;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
 import org.lineageos.lineageparts.R;
+import org.lineageos.lineageparts.profiles.AppTriggerList;
 import org.lineageos.lineageparts.profiles.ProfilesSettings;
+import org.lineageos.lineageparts.utils.PartsExecutor;
 
 public class AppTriggerFragment extends Fragment {
 
+    // Toggles within this delay are written back together
+    private static final long SAVE_DELAY_MS = 1000;
+
     private Profile mProfile;
     private RecyclerView mRecyclerView;
     private AppAdapter mAppAdapter;
-    private List<ApplicationInfo> mAppList;
+    private List<AppEntry> mAppList = new ArrayList<>();
     private PackageManager mPackageManager;
+    private LruCache<String, Drawable> mIconCache;
+    private AppTriggerList mTriggerList;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mSaveRunnable = this::saveTriggerList;
+
+    /**
+     * A launchable app, with its label loaded once for display and sorting.
+     */
+    private static class AppEntry {
+        final ApplicationInfo mInfo;
+        final String mLabel;
+        final String mSortKey;
+
+        AppEntry(ApplicationInfo info, String label) {
+            mInfo = info;
+            mLabel = label;
+            mSortKey = label.toLowerCase();
+        }
+    }
 
     public static AppTriggerFragment newInstance(Profile profile) {
         AppTriggerFragment fragment = new AppTriggerFragment();
@@ -68,7 +91,28 @@ public class AppTriggerFragment extends Fragment {
             mProfile = getArguments().getParcelable(ProfilesSettings.EXTRA_PROFILE);
         }
         mPackageManager = requireContext().getPackageManager();
-        mAppList = getLaunchableApps();
+
+        // Keep up to 1/16th of the memory available to the app worth of icons
+        final int memoryClass = requireContext().getSystemService(ActivityManager.class)
+                .getMemoryClass();
+        mIconCache = new LruCache<String, Drawable>(memoryClass * 1024 * 1024 / 16) {
+            @Override
+            protected int sizeOf(String packageName, Drawable icon) {
+                return Math.max(icon.getIntrinsicWidth(), 1)
+                        * Math.max(icon.getIntrinsicHeight(), 1) * 4;
+            }
+        };
+
+        PartsExecutor.execute(getLifecycle(), PartsExecutor.Lane.IO, this::getLaunchableApps,
+                apps -> {
+                    if (apps == null) {
+                        return;
+                    }
+                    mAppList = apps;
+                    if (mAppAdapter != null) {
+                        mAppAdapter.setAppList(apps);
+                    }
+                });
     }
 
     @Nullable
@@ -79,19 +123,45 @@ public class AppTriggerFragment extends Fragment {
 
         mRecyclerView = rootView.findViewById(R.id.container);
         mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        if (mTriggerList == null) {
+            mTriggerList = AppTriggerList.get(requireContext());
+        }
         mAppAdapter = new AppAdapter(requireContext(), mAppList, mProfile.getUuid().toString());
         mRecyclerView.setAdapter(mAppAdapter);
 
         return rootView;
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        mHandler.removeCallbacks(mSaveRunnable);
+        saveTriggerList();
+    }
+
+    private void scheduleSave() {
+        mHandler.removeCallbacks(mSaveRunnable);
+        mHandler.postDelayed(mSaveRunnable, SAVE_DELAY_MS);
+    }
+
+    private void saveTriggerList() {
+        if (mTriggerList == null || !mTriggerList.hasChanges()) {
+            return;
+        }
+        final AppTriggerList triggerList = mTriggerList;
+        final Context context = requireContext().getApplicationContext();
+        PartsExecutor.executeCritical(PartsExecutor.Lane.IO, () -> triggerList.save(context));
+    }
+
     /**
      * This method fetches only launchable apps (apps with launcher activities) and sorts them by app label.
      * It optimizes fetching by avoiding unnecessary calls to PackageManager and sorting apps using a parallel stream.
      * 
-     * @return List of ApplicationInfo containing launchable apps only.
+     * Labels are loaded once per app, then used as sort keys.
+     * 
+     * @return List of AppEntry containing launchable apps only.
      */
-    private List<ApplicationInfo> getLaunchableApps() {
+    private List<AppEntry> getLaunchableApps() {
         Intent launchIntent = new Intent(Intent.ACTION_MAIN);
         launchIntent.addCategory(Intent.CATEGORY_LAUNCHER);
         List<ResolveInfo> resolveInfos = mPackageManager.queryIntentActivities(launchIntent, 0);
@@ -99,26 +169,30 @@ public class AppTriggerFragment extends Fragment {
         return resolveInfos.parallelStream()
                 .map(resolveInfo -> resolveInfo.activityInfo.applicationInfo)
                 .distinct()
-                .sorted(Comparator.comparing(app -> app.loadLabel(mPackageManager).toString().toLowerCase()))
+                .map(app -> new AppEntry(app, app.loadLabel(mPackageManager).toString()))
+                .sorted(Comparator.comparing(app -> app.mSortKey))
                 .collect(Collectors.toList());
     }
 
     public class AppAdapter extends RecyclerView.Adapter<AppAdapter.AppViewHolder> {
 
-        private List<ApplicationInfo> appList;
+        private List<AppEntry> appList;
         private PackageManager mPackageManager;
         private Set<String> selectedApps;
-        private Set<String> appsSelectedByOtherProfiles;
         private Context context;
         private String profileUuid;
 
-        public AppAdapter(Context context, List<ApplicationInfo> appList, String profileUuid) {
+        public AppAdapter(Context context, List<AppEntry> appList, String profileUuid) {
             this.appList = appList;
             this.mPackageManager = context.getPackageManager();
             this.context = context;
             this.profileUuid = profileUuid;
-            this.appsSelectedByOtherProfiles = new HashSet<>();
-            this.selectedApps = loadSelectedApps();
+            this.selectedApps = mTriggerList.getPackages(profileUuid);
+        }
+
+        public void setAppList(List<AppEntry> appList) {
+            this.appList = appList;
+            notifyDataSetChanged();
         }
 
         @NonNull
@@ -131,69 +205,21 @@ public class AppTriggerFragment extends Fragment {
 
         @Override
         public void onBindViewHolder(@NonNull AppViewHolder holder, int position) {
-            ApplicationInfo appInfo = appList.get(position);
-            boolean isSelectedByOtherProfile = appsSelectedByOtherProfiles.contains(appInfo.packageName);
-            holder.bind(appInfo, selectedApps.contains(appInfo.packageName), isSelectedByOtherProfile);
+            AppEntry app = appList.get(position);
+            String packageName = app.mInfo.packageName;
+            boolean isSelectedByOtherProfile =
+                    mTriggerList.isSelectedByOtherProfile(packageName, profileUuid);
+            holder.bind(app, selectedApps.contains(packageName), isSelectedByOtherProfile);
         }
 
         @Override
-        public int getItemCount() {
-            return appList.size();
+        public void onViewRecycled(@NonNull AppViewHolder holder) {
+            holder.cancelIconLoad();
         }
 
-        /**
-         * Load selected apps for the current profile (identified by profileUuid) from the JSON string in Settings.System.
-         * Also track apps that are selected by other profiles and store them in appsSelectedByOtherProfiles.
-         */
-        private Set<String> loadSelectedApps() {
-            Set<String> selectedAppsSet = new HashSet<>();
-            try {
-                String jsonString = Settings.System.getString(context.getContentResolver(), Settings.System.PROFILE_APP_TRIGGER_LIST);
-                if (jsonString != null && !jsonString.isEmpty()) {
-                    JSONObject json = new JSONObject(jsonString);
-                    Iterator<String> keys = json.keys();
-                    while (keys.hasNext()) {
-                        String uuid = keys.next();
-                        JSONArray appsArray = json.getJSONArray(uuid);
-                        if (uuid.equals(profileUuid)) {
-                            for (int i = 0; i < appsArray.length(); i++) {
-                                selectedAppsSet.add(appsArray.getString(i).trim());
-                            }
-                        } else {
-                            for (int i = 0; i < appsArray.length(); i++) {
-                                appsSelectedByOtherProfiles.add(appsArray.getString(i).trim());
-                            }
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            return selectedAppsSet;
-        }
-
-        /**
-         * Save the selected apps for the current profile (identified by profileUuid) to JSON in Settings.System.
-         */
-        private void saveSelectedApps() {
-            try {
-                String jsonString = Settings.System.getString(context.getContentResolver(), Settings.System.PROFILE_APP_TRIGGER_LIST);
-                JSONObject json;
-                if (jsonString == null || jsonString.isEmpty()) {
-                    json = new JSONObject();
-                } else {
-                    json = new JSONObject(jsonString);
-                }
-                JSONArray appsArray = new JSONArray();
-                for (String appPackageName : selectedApps) {
-                    appsArray.put(appPackageName);
-                }
-                json.put(profileUuid, appsArray);
-                Settings.System.putString(context.getContentResolver(), Settings.System.PROFILE_APP_TRIGGER_LIST, json.toString());
-                Log.d("AppAdapter", "Saved selected apps for profile " + profileUuid + ": " + appsArray.toString());
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        @Override
+        public int getItemCount() {
+            return appList.size();
         }
 
         class AppViewHolder extends RecyclerView.ViewHolder {
@@ -202,6 +228,7 @@ public class AppTriggerFragment extends Fragment {
             private TextView appLabel;
             private TextView appPackageName;
             private CheckBox appCheckbox;
+            private Future<Drawable> iconFuture;
 
             public AppViewHolder(@NonNull View itemView) {
                 super(itemView);
@@ -211,14 +238,14 @@ public class AppTriggerFragment extends Fragment {
                 appCheckbox = itemView.findViewById(R.id.checkBox);
             }
 
-            public void bind(ApplicationInfo appInfo, boolean isSelected, boolean isSelectedByOtherProfile) {
+            public void bind(AppEntry app, boolean isSelected, boolean isSelectedByOtherProfile) {
                 View rootView = itemView;
-                String label = appInfo.loadLabel(mPackageManager).toString();
+                ApplicationInfo appInfo = app.mInfo;
                 String packageName = appInfo.packageName;
-                Drawable icon = appInfo.loadIcon(mPackageManager);
 
-                appLabel.setText(label);
-                appIcon.setImageDrawable(icon);
+                appLabel.setText(app.mLabel);
+                bindIcon(appInfo);
+                appCheckbox.setOnCheckedChangeListener(null);
                 appCheckbox.setChecked(isSelected);
                 appPackageName.setText(packageName);
 
@@ -243,7 +270,9 @@ public class AppTriggerFragment extends Fragment {
                         } else {
                             selectedApps.remove(appInfo.packageName);
                         }
-                        saveSelectedApps();
+                        mTriggerList.setPackageSelected(profileUuid, appInfo.packageName,
+                                isChecked);
+                        scheduleSave();
                     }
                 });
 
@@ -255,6 +284,38 @@ public class AppTriggerFragment extends Fragment {
                     }
                 });
             }
+
+            /**
+             * Shows the cached icon of the app, or a placeholder while it gets loaded
+             * in the background.
+             */
+            private void bindIcon(ApplicationInfo appInfo) {
+                cancelIconLoad();
+
+                final String packageName = appInfo.packageName;
+                final Drawable cached = mIconCache.get(packageName);
+                if (cached != null) {
+                    appIcon.setImageDrawable(cached);
+                    return;
+                }
+
+                appIcon.setImageDrawable(mPackageManager.getDefaultActivityIcon());
+                iconFuture = PartsExecutor.execute(getViewLifecycleOwner().getLifecycle(),
+                        PartsExecutor.Lane.UI, () -> appInfo.loadIcon(mPackageManager), icon -> {
+                            iconFuture = null;
+                            if (icon != null) {
+                                mIconCache.put(packageName, icon);
+                                appIcon.setImageDrawable(icon);
+                            }
+                        });
+            }
+
+            void cancelIconLoad() {
+                if (iconFuture != null) {
+                    iconFuture.cancel(true);
+                    iconFuture = null;
+                }
+            }
         }
     }
 }
@@ -41,8 +41,7 @@ public class TimeTriggerFragment extends Fragment {
     private LinearLayout mAddButton;
     private TimePreferenceAdapter mAdapter;
     private List<TimePreference> mTimePreferences = new ArrayList<>();
-    private static final String PREF_SELECTED_TIME_PREFIX = "selected_time_";
-    private static final int MAX_ALARMS = 5;
+    private static final int MAX_ALARMS = TimeProfileUtils.MAX_ALARMS;
 
     public static TimeTriggerFragment newInstance(Profile profile) {
         TimeTriggerFragment fragment = new TimeTriggerFragment();
@@ -95,8 +94,8 @@ public class TimeTriggerFragment extends Fragment {
             }
 
             @Override
-            public void onEdit(int position, String time) {
-                showTimePickerDialog(position, time);
+            public void onEdit(int position, int minuteOfDay) {
+                showTimePickerDialog(mTimePreferences.get(position).alarmIndex, minuteOfDay);
             }
         });
         mRecyclerView.setAdapter(mAdapter);
@@ -111,15 +110,13 @@ public class TimeTriggerFragment extends Fragment {
     }
 
     private void loadSavedPreferences() {
-        SharedPreferences prefs = getContext().getSharedPreferences(
-                "profile_prefs", Context.MODE_PRIVATE);
+        SharedPreferences prefs = TimeProfileUtils.getPrefs(getContext());
         mTimePreferences.clear();
 
+        int[] times = TimeProfileUtils.getTimes(prefs, mProfile.getUuid());
         for (int i = 0; i < MAX_ALARMS; i++) {
-            String selectedTime = prefs.getString(getUniqueTimeKey(
-                    mProfile.getUuid(), i), null);
-            if (selectedTime != null) {
-                mTimePreferences.add(new TimePreference(i, selectedTime)); // Add loaded preference with index
+            if (times[i] >= 0) {
+                mTimePreferences.add(new TimePreference(i, times[i])); // Add loaded preference with index
             }
         }
         mAdapter.notifyDataSetChanged();
@@ -135,17 +132,18 @@ public class TimeTriggerFragment extends Fragment {
     }
 
     private void addTimePreference() {
-        SharedPreferences prefs = getContext().getSharedPreferences(
-                "profile_prefs", Context.MODE_PRIVATE);
+        SharedPreferences prefs = TimeProfileUtils.getPrefs(getContext());
         int nextIndex = getNextAvailableIndex(prefs);
         if (nextIndex < MAX_ALARMS) {
-            showTimePickerDialog(nextIndex, null);
+            showTimePickerDialog(nextIndex, -1);
         }
     }
 
     private int getNextAvailableIndex(SharedPreferences prefs) {
+        // Matches what is listed, so a slot still holding an unmigrated time is reused
+        int[] times = TimeProfileUtils.getTimes(prefs, mProfile.getUuid());
         for (int i = 0; i < MAX_ALARMS; i++) {
-            if (prefs.getString(getUniqueTimeKey(mProfile.getUuid(), i), null) == null) {
+            if (times[i] < 0) {
                 return i;
             }
         }
@@ -153,57 +151,45 @@ public class TimeTriggerFragment extends Fragment {
     }
 
     private void refreshTimePreferences() {
-        boolean is24HourFormat = DateFormat.is24HourFormat(getContext());
+        // Times are formatted when bound, so this picks up changes of the 12/24h setting
         loadSavedPreferences();
-        for (int i = 0; i < mTimePreferences.size(); i++) {
-            String time = mTimePreferences.get(i).time;
-            String formattedTime = formatTime(parseTime(time, !is24HourFormat)[0], 
-                    parseTime(time, !is24HourFormat)[1], is24HourFormat);
-            mTimePreferences.get(i).time = formattedTime;
-            mAdapter.notifyItemChanged(i);
-        }
-        mAdapter.notifyDataSetChanged();
     }
 
-    private void showTimePickerDialog(int alarmIndex, String existingTime) {
+    private void showTimePickerDialog(int alarmIndex, int existingMinuteOfDay) {
         final Calendar calendar = Calendar.getInstance();
         boolean is24HourFormat = DateFormat.is24HourFormat(getContext());
 
-        if (existingTime != null) {
-            int[] time = parseTime(existingTime, is24HourFormat);
-            calendar.set(Calendar.HOUR_OF_DAY, time[0]);
-            calendar.set(Calendar.MINUTE, time[1]);
+        if (existingMinuteOfDay >= 0) {
+            calendar.set(Calendar.HOUR_OF_DAY, existingMinuteOfDay / 60);
+            calendar.set(Calendar.MINUTE, existingMinuteOfDay % 60);
         }
 
         TimePickerDialog timePickerDialog = new TimePickerDialog(
             getContext(),
             (TimePicker view, int hourOfDay, int minute) -> {
-                calendar.set(Calendar.HOUR_OF_DAY, hourOfDay);
-                calendar.set(Calendar.MINUTE, minute);
-                calendar.set(Calendar.SECOND, 0);
-                String newSelectedTime = formatTime(hourOfDay, minute, is24HourFormat);
+                int newMinuteOfDay = hourOfDay * 60 + minute;
 
-                if (existingTime != null && newSelectedTime.equals(existingTime)) {
+                if (newMinuteOfDay == existingMinuteOfDay) {
                     return; // No changes
                 }
 
-                saveSelectedTime(newSelectedTime, alarmIndex);
+                saveSelectedTime(newMinuteOfDay, alarmIndex);
 
-                if (existingTime != null) {
+                if (existingMinuteOfDay >= 0) {
                     // Update the specific TimePreference by finding its index by alarmIndex
                     for (int i = 0; i < mTimePreferences.size(); i++) {
                         if (mTimePreferences.get(i).alarmIndex == alarmIndex) {
-                            mTimePreferences.get(i).time = newSelectedTime;
+                            mTimePreferences.get(i).minuteOfDay = newMinuteOfDay;
                             mAdapter.notifyItemChanged(i);
                             break;
                         }
                     }
                 } else {
-                    mTimePreferences.add(new TimePreference(alarmIndex, newSelectedTime));
+                    mTimePreferences.add(new TimePreference(alarmIndex, newMinuteOfDay));
                     mAdapter.notifyItemInserted(mTimePreferences.size() - 1);
                 }
 
-                scheduleAlarm(calendar, alarmIndex);
+                rescheduleAlarm();
                 updateAddButtonVisibility(mTimePreferences.size());
             },
             calendar.get(Calendar.HOUR_OF_DAY),
@@ -213,78 +199,34 @@ public class TimeTriggerFragment extends Fragment {
         timePickerDialog.show();
     }
 
-    private String formatTime(int hourOfDay, int minute, boolean is24HourFormat) {
-        if (is24HourFormat) {
-            return String.format("%02d:%02d", hourOfDay, minute);
-        } else {
-            int hour = hourOfDay % 12;
-            if (hour == 0) hour = 12;
-            String amPm = (hourOfDay >= 12) ? "PM" : "AM";
-            return String.format("%d:%02d %s", hour, minute, amPm);
-        }
-    }
-
-    private int[] parseTime(String timeString, boolean is24HourFormat) {
-        int[] time = new int[2];
-        try {
-            if (timeString.contains("AM") || timeString.contains("PM")) {
-                String[] parts = timeString.split(" ");
-                String[] timeParts = parts[0].split(":");
-                time[0] = Integer.parseInt(timeParts[0]);
-                time[1] = Integer.parseInt(timeParts[1]);
-                if (parts[1].equals("PM") && time[0] < 12) {
-                    time[0] += 12;
-                } else if (parts[1].equals("AM") && time[0] == 12) {
-                    time[0] = 0;
-                }
-            } else {
-                String[] parts = timeString.split(":");
-                time[0] = Integer.parseInt(parts[0]);
-                time[1] = Integer.parseInt(parts[1]);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return time;
-    }
-
-    private void saveSelectedTime(String formattedTime, int alarmIndex) {
+    private void saveSelectedTime(int minuteOfDay, int alarmIndex) {
         if (mProfile != null) {
-            SharedPreferences.Editor editor = getContext().getSharedPreferences(
-                    "profile_prefs", Context.MODE_PRIVATE).edit();
-            editor.putString(getUniqueTimeKey(mProfile.getUuid(), alarmIndex), formattedTime);
+            SharedPreferences.Editor editor = TimeProfileUtils.getPrefs(getContext()).edit();
+            editor.putInt(getUniqueTimeKey(mProfile.getUuid(), alarmIndex), minuteOfDay);
             editor.apply();
         }
     }
 
     private void deleteTimePreference(int position) {
         TimePreference timePreference = mTimePreferences.get(position);
-        SharedPreferences prefs = getContext().getSharedPreferences(
-                "profile_prefs", Context.MODE_PRIVATE);
+        SharedPreferences prefs = TimeProfileUtils.getPrefs(getContext());
         SharedPreferences.Editor editor = prefs.edit();
         editor.remove(getUniqueTimeKey(mProfile.getUuid(), timePreference.alarmIndex));
         editor.apply();
-        cancelAlarm(timePreference.alarmIndex);
+        rescheduleAlarm();
         mTimePreferences.remove(position);
         mAdapter.notifyItemRemoved(position);
         mAdapter.notifyItemRangeChanged(position, mTimePreferences.size());
         updateAddButtonVisibility(mTimePreferences.size());
     }
 
-    private void scheduleAlarm(Calendar time, int alarmIndex) {
-        if (mProfile != null) {
-            TimeProfileUtils.scheduleAlarm(getContext(), time, mProfile, alarmIndex);
-        }
-    }
-
-    private void cancelAlarm(int alarmIndex) {
-        if (mProfile != null) {
-            TimeProfileUtils.cancelAlarm(getContext(), mProfile, alarmIndex);
-        }
+    private void rescheduleAlarm() {
+        // The agenda covers every profile, so a single alarm is re-armed
+        TimeProfileUtils.scheduleNextAlarm(getContext());
     }
 
     private String getUniqueTimeKey(UUID profileUuid, int alarmIndex) {
-        return PREF_SELECTED_TIME_PREFIX + profileUuid.toString() + "_" + alarmIndex;
+        return TimeProfileUtils.getTimeKey(profileUuid, alarmIndex);
     }
 
     private static class TimePreferenceAdapter 
@@ -296,7 +238,7 @@ public class TimeTriggerFragment extends Fragment {
 
         interface OnTimePreferenceInteractionListener {
             void onDelete(int position);
-            void onEdit(int position, String time);
+            void onEdit(int position, int minuteOfDay);
         }
 
         public TimePreferenceAdapter(List<TimePreference> mTimePreferences, Context context, 
@@ -318,7 +260,8 @@ public class TimeTriggerFragment extends Fragment {
         public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
             TimePreference timePreference = mTimePreferences.get(position);
             holder.timeTextView.setText(context.getString(R.string.profile_time_title));
-            holder.timeSummaryTextView.setText(timePreference.time);
+            holder.timeSummaryTextView.setText(
+                    TimeProfileUtils.formatTime(context, timePreference.minuteOfDay));
 
             LayoutInflater inflater = LayoutInflater.from(context);
             View widgetContent = inflater.inflate(
@@ -326,7 +269,8 @@ public class TimeTriggerFragment extends Fragment {
             holder.widgetFrame.addView(widgetContent);
             holder.widgetFrame.setOnClickListener(v -> listener.onDelete(position));
 
-            holder.itemView.setOnClickListener(v -> listener.onEdit(position, timePreference.time));
+            holder.itemView.setOnClickListener(v -> listener.onEdit(position,
+                    timePreference.minuteOfDay));
         }
 
         @Override
@@ -350,11 +294,11 @@ public class TimeTriggerFragment extends Fragment {
 
     public class TimePreference {
         int alarmIndex;
-        String time;
+        int minuteOfDay;
 
-        public TimePreference(int alarmIndex, String time) {
+        public TimePreference(int alarmIndex, int minuteOfDay) {
             this.alarmIndex = alarmIndex;
-            this.time = time;
+            this.minuteOfDay = minuteOfDay;
         }
     }
 }
@@ -9,17 +9,18 @@ import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.provider.SearchIndexablesProvider;
 import android.util.ArraySet;
-import android.util.Log;
 
 import lineageos.preference.PartInfo;
 import lineageos.preference.PartsList;
 
+import org.lineageos.lineageparts.PartProviderRegistry;
 import org.lineageos.lineageparts.search.Searchable.SearchIndexProvider;
 import org.lineageos.platform.internal.R;
 
-import java.lang.reflect.Field;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static android.provider.SearchIndexablesContract.COLUMN_INDEX_NON_INDEXABLE_KEYS_KEY_VALUE;
@@ -57,10 +58,7 @@ import static lineageos.preference.PartsList.LINEAGEPARTS_ACTIVITY;
  */
 public class LineagePartsSearchIndexablesProvider extends SearchIndexablesProvider {
 
-    private static final String TAG = LineagePartsSearchIndexablesProvider.class.getSimpleName();
-
-    private static final String FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER =
-            "SEARCH_INDEX_DATA_PROVIDER";
+    public static final String AUTHORITY = "org.lineageos.lineageparts";
 
     @Override
     public Cursor queryXmlResources(String[] strings) {
@@ -93,25 +91,18 @@ public class LineagePartsSearchIndexablesProvider extends SearchIndexablesProvid
     @Override
     public Cursor queryRawData(String[] strings) {
         MatrixCursor cursor = new MatrixCursor(INDEXABLES_RAW_COLUMNS);
-        final Set<String> keys = PartsList.get(getContext()).getPartsList();
+        final Map<String, SearchIndexProvider> providers = getSearchIndexProviders();
+        final Map<String, List<SearchIndexableRaw>> rawData =
+                SearchIndexCache.get().getRawData(getContext(), providers);
 
         // we also submit keywords and metadata for all top-level items
         // which don't have an associated XML resource
-        for (String key : keys) {
-            PartInfo i = PartsList.get(getContext()).getPartInfo(key);
-            if (i == null || !i.isAvailable()) {
-                continue;
-            }
-
-            // look for custom keywords
-            SearchIndexProvider sip = getSearchIndexProvider(i.getFragmentClass());
-            if (sip == null) {
-                continue;
-            }
+        for (Map.Entry<String, List<SearchIndexableRaw>> entry : rawData.entrySet()) {
+            PartInfo i = PartsList.get(getContext()).getPartInfo(entry.getKey());
 
             // don't create a duplicate entry if no custom keywords are provided
             // and a resource was already indexed
-            List<SearchIndexableRaw> rawList = sip.getRawDataToIndex(getContext());
+            List<SearchIndexableRaw> rawList = entry.getValue();
             if (rawList == null || rawList.size() == 0) {
                 if (i.getXmlRes() > 0) {
                     continue;
@@ -155,27 +146,14 @@ public class LineagePartsSearchIndexablesProvider extends SearchIndexablesProvid
     public Cursor queryNonIndexableKeys(String[] strings) {
         MatrixCursor cursor = new MatrixCursor(NON_INDEXABLES_KEYS_COLUMNS);
 
-        final Set<String> keys = PartsList.get(getContext()).getPartsList();
         final Set<String> nonIndexables = new ArraySet<>();
 
-        for (String key : keys) {
-            PartInfo i = PartsList.get(getContext()).getPartInfo(key);
-            if (i == null || !i.isAvailable()) {
-                continue;
+        // look for non-indexable keys
+        for (Set<String> nik : SearchIndexCache.get().getNonIndexableKeys(getContext(),
+                getSearchIndexProviders()).values()) {
+            if (nik != null) {
+                nonIndexables.addAll(nik);
             }
-
-            // look for non-indexable keys
-            SearchIndexProvider sip = getSearchIndexProvider(i.getFragmentClass());
-            if (sip == null) {
-                continue;
-            }
-
-            Set<String> nik = sip.getNonIndexableKeys(getContext());
-            if (nik == null) {
-                continue;
-            }
-
-            nonIndexables.addAll(nik);
         }
 
         for (String nik : nonIndexables) {
@@ -191,34 +169,20 @@ public class LineagePartsSearchIndexablesProvider extends SearchIndexablesProvid
         return true;
     }
 
-    private SearchIndexProvider getSearchIndexProvider(final String className) {
-
-        final Class<?> clazz;
-        try {
-            clazz = Class.forName(className);
-        } catch (ClassNotFoundException e) {
-            Log.d(TAG, "Cannot find class: " + className);
-            return null;
-        }
-
-        if (!Searchable.class.isAssignableFrom(clazz)) {
-            return null;
-        }
+    private Map<String, SearchIndexProvider> getSearchIndexProviders() {
+        final Map<String, SearchIndexProvider> providers = new LinkedHashMap<>();
+        for (String key : PartsList.get(getContext()).getPartsList()) {
+            PartInfo i = PartsList.get(getContext()).getPartInfo(key);
+            if (i == null || !i.isAvailable()) {
+                continue;
+            }
 
-        try {
-            final Field f = clazz.getField(FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER);
-            return (SearchIndexProvider) f.get(null);
-        } catch (NoSuchFieldException e) {
-            Log.e(TAG, "Cannot find field '" + FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER + "'");
-        } catch (SecurityException se) {
-            Log.e(TAG,
-                    "Security exception for field '" + FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER + "'");
-        } catch (IllegalAccessException e) {
-            Log.e(TAG, "Illegal access to field '" + FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER + "'");
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Illegal argument when accessing field '"
-                    + FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER + "'");
+            SearchIndexProvider sip =
+                    PartProviderRegistry.getSearchIndexProvider(i.getFragmentClass());
+            if (sip != null) {
+                providers.put(key, sip);
+            }
         }
-        return null;
+        return providers;
     }
 }
@@ -0,0 +1,292 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Kusuma
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.lineageparts.search;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.util.Log;
+
+import lineageos.preference.PartInfo;
+import lineageos.preference.PartsList;
+
+import org.lineageos.lineageparts.search.Searchable.SearchIndexProvider;
+import org.lineageos.lineageparts.utils.PartsExecutor;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static android.provider.SearchIndexablesContract.INDEXABLES_RAW_PATH;
+import static android.provider.SearchIndexablesContract.NON_INDEXABLES_KEYS_PATH;
+
+/**
+ * Keeps the search data returned by every part, so it is only computed again when
+ * the locale, the package or the inputs of the part change.
+ * <p>
+ * Parts whose inputs changed are told about through {@link #notifyPartChanged}, which
+ * bumps their index revision and lets the Settings app know it should query the index
+ * again. Only the changed parts are recomputed then, the others are served from memory.
+ * <p>
+ * Missing data is computed in parallel on the indexing lane. Callers wait at most
+ * {@link #PROVIDER_TIMEOUT_MS} for it: parts that are slower than that are served their
+ * last known data, if it was computed for the same locale, package and inputs, and get
+ * cached whenever they complete. Leaving non-indexable keys out makes unsupported settings
+ * searchable, so parts without such data are waited for up to
+ * {@link #NON_INDEXABLE_KEYS_TIMEOUT_MS}. Parts still missing then are left out, and the
+ * Settings app is asked to query again once they complete.
+ */
+public class SearchIndexCache {
+
+    private static final String TAG = SearchIndexCache.class.getSimpleName();
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static final long PROVIDER_TIMEOUT_MS = 2000;
+    private static final long NON_INDEXABLE_KEYS_TIMEOUT_MS = 10000;
+
+    private static final SearchIndexCache sInstance = new SearchIndexCache();
+
+    private static class Entry<T> {
+        final String mKey;
+        // Same as the key, without the revision of the part
+        final String mFallbackKey;
+        final T mValue;
+
+        Entry(String key, String fallbackKey, T value) {
+            mKey = key;
+            mFallbackKey = fallbackKey;
+            mValue = value;
+        }
+    }
+
+    private static class PendingEntry<T> {
+        final String mKey;
+        volatile Future<T> mFuture;
+        // Set when a query had to go without this data
+        volatile boolean mLate;
+
+        PendingEntry(String key) {
+            mKey = key;
+        }
+    }
+
+    private final Map<String, Entry<List<SearchIndexableRaw>>> mRawData =
+            new ConcurrentHashMap<>();
+    private final Map<String, PendingEntry<List<SearchIndexableRaw>>> mPendingRawData =
+            new ConcurrentHashMap<>();
+    private final Map<String, Entry<Set<String>>> mNonIndexableKeys =
+            new ConcurrentHashMap<>();
+    private final Map<String, PendingEntry<Set<String>>> mPendingNonIndexableKeys =
+            new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> mRevisions = new ConcurrentHashMap<>();
+
+    private String mPackageVersion;
+
+    static SearchIndexCache get() {
+        return sInstance;
+    }
+
+    private SearchIndexCache() {
+    }
+
+    /**
+     * Marks the search data of a part as outdated and asks the Settings app to index
+     * LineageParts again.
+     *
+     * @param part the key of the part in the parts catalog
+     */
+    public static void notifyPartChanged(Context context, String part) {
+        sInstance.mRevisions.computeIfAbsent(part, p -> new AtomicInteger()).incrementAndGet();
+        if (DEBUG) Log.d(TAG, "Search data of " + part + " changed");
+        notifyIndexChanged(context);
+    }
+
+    private static void notifyIndexChanged(Context context) {
+        final ContentResolver resolver = context.getContentResolver();
+        resolver.notifyChange(getContentUri(INDEXABLES_RAW_PATH), null);
+        resolver.notifyChange(getContentUri(NON_INDEXABLES_KEYS_PATH), null);
+    }
+
+    /**
+     * Same as {@link #notifyPartChanged}, for every part using the given fragment.
+     */
+    public static void notifyFragmentChanged(Context context, String fragmentClass) {
+        final PartsList partsList = PartsList.get(context);
+        for (String key : partsList.getPartsList()) {
+            PartInfo i = partsList.getPartInfo(key);
+            if (i != null && fragmentClass.equals(i.getFragmentClass())) {
+                notifyPartChanged(context, key);
+            }
+        }
+    }
+
+    private static Uri getContentUri(String path) {
+        return new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(LineagePartsSearchIndexablesProvider.AUTHORITY)
+                .appendEncodedPath(path)
+                .build();
+    }
+
+    /**
+     * Returns the raw data of the given parts, keyed by part name. Parts that didn't
+     * provide their data in time get their last known data, or are missing from the
+     * result if there is none.
+     */
+    Map<String, List<SearchIndexableRaw>> getRawData(Context context,
+            Map<String, SearchIndexProvider> providers) {
+        return collect(context, providers, mRawData, mPendingRawData,
+                SearchIndexProvider::getRawDataToIndex, false);
+    }
+
+    /**
+     * Returns the non-indexable keys of the given parts, keyed by part name. Parts that
+     * didn't provide their keys in time get their last known keys, or are waited for
+     * longer if there are none.
+     */
+    Map<String, Set<String>> getNonIndexableKeys(Context context,
+            Map<String, SearchIndexProvider> providers) {
+        return collect(context, providers, mNonIndexableKeys, mPendingNonIndexableKeys,
+                SearchIndexProvider::getNonIndexableKeys, true);
+    }
+
+    private <T> Map<String, T> collect(Context context,
+            Map<String, SearchIndexProvider> providers, Map<String, Entry<T>> cache,
+            Map<String, PendingEntry<T>> pendingCache,
+            BiFunction<SearchIndexProvider, Context, T> loader, boolean complete) {
+        final String baseKey = getBaseKey(context);
+        final Map<String, T> result = new LinkedHashMap<>();
+        final Map<String, PendingEntry<T>> pending = new LinkedHashMap<>();
+        final Map<String, String> fallbackKeys = new LinkedHashMap<>();
+
+        for (Map.Entry<String, SearchIndexProvider> provider : providers.entrySet()) {
+            final String part = provider.getKey();
+            final SearchIndexProvider sip = provider.getValue();
+            final String fallbackKey = baseKey + "/" + sip.getIndexFingerprint(context);
+            final String key = fallbackKey + "/" + getRevision(part);
+
+            final Entry<T> cached = cache.get(part);
+            if (cached != null && cached.mKey.equals(key)) {
+                result.put(part, cached.mValue);
+                continue;
+            }
+            fallbackKeys.put(part, fallbackKey);
+
+            // Don't load the same data twice if a previous query is still waiting for it
+            final PendingEntry<T> inFlight = pendingCache.get(part);
+            if (inFlight != null && inFlight.mKey.equals(key) && inFlight.mFuture != null
+                    && !inFlight.mFuture.isDone()) {
+                pending.put(part, inFlight);
+                continue;
+            }
+
+            final PendingEntry<T> entry = new PendingEntry<>(key);
+            pendingCache.put(part, entry);
+            entry.mFuture = PartsExecutor.submitCritical(PartsExecutor.Lane.INDEXING, () -> {
+                final T value = loader.apply(sip, context);
+                cache.put(part, new Entry<>(key, fallbackKey, value));
+                if (pendingCache.remove(part, entry) && entry.mLate) {
+                    notifyIndexChanged(context);
+                }
+                return value;
+            });
+            pending.put(part, entry);
+        }
+
+        final long start = System.currentTimeMillis();
+        for (Map.Entry<String, PendingEntry<T>> entry : pending.entrySet()) {
+            final String part = entry.getKey();
+            final PendingEntry<T> pendingEntry = entry.getValue();
+            T value = await(part, pendingEntry, start + PROVIDER_TIMEOUT_MS);
+            if (value == null) {
+                // Only data computed for the same locale, package and inputs can stand in
+                final Entry<T> lastKnown = cache.get(part);
+                if (lastKnown != null && lastKnown.mFallbackKey.equals(fallbackKeys.get(part))) {
+                    value = lastKnown.mValue;
+                } else if (complete) {
+                    // Leaving keys out makes unsupported settings searchable, give it longer
+                    value = await(part, pendingEntry, start + NON_INDEXABLE_KEYS_TIMEOUT_MS);
+                }
+            }
+            if (value != null) {
+                result.put(part, value);
+                continue;
+            }
+
+            Log.w(TAG, "No search data for part " + part + " yet");
+            // Have Settings query again once it's there
+            pendingEntry.mLate = true;
+            final Entry<T> loaded = cache.get(part);
+            if (loaded != null && loaded.mKey.equals(pendingEntry.mKey)) {
+                // Completed after we stopped waiting, but before it could see the flag
+                notifyIndexChanged(context);
+            }
+        }
+
+        // Keep the order of the parts
+        final Map<String, T> ordered = new LinkedHashMap<>();
+        for (String part : providers.keySet()) {
+            if (result.containsKey(part)) {
+                ordered.put(part, result.get(part));
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Waits for pending data until the given deadline.
+     *
+     * @return the data, or null if it failed or is not there in time
+     */
+    private static <T> T await(String part, PendingEntry<T> entry, long deadline) {
+        final long timeout = Math.max(0, deadline - System.currentTimeMillis());
+        try {
+            return entry.mFuture.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Part " + part + " is too slow to index");
+        } catch (ExecutionException | CancellationException e) {
+            Log.e(TAG, "Failed to index part " + part, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private int getRevision(String part) {
+        final AtomicInteger revision = mRevisions.get(part);
+        return revision != null ? revision.get() : 0;
+    }
+
+    private String getBaseKey(Context context) {
+        return context.getResources().getConfiguration().getLocales().toLanguageTags()
+                + "/" + getPackageVersion(context);
+    }
+
+    private synchronized String getPackageVersion(Context context) {
+        if (mPackageVersion == null) {
+            try {
+                PackageInfo pi = context.getPackageManager().getPackageInfo(
+                        context.getPackageName(), PackageManager.PackageInfoFlags.of(0));
+                mPackageVersion = pi.getLongVersionCode() + "-" + pi.lastUpdateTime;
+            } catch (PackageManager.NameNotFoundException e) {
+                mPackageVersion = "";
+            }
+        }
+        return mPackageVersion;
+    }
+}
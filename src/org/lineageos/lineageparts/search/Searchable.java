@@ -19,6 +19,10 @@ import java.util.Set;
  * If a class wants to use this functionality, it should contain a static field
  * named SEARCH_INDEX_DATA_PROVIDER which contains an instance of SearchIndexProvider.
  * This is similar to the mechanism used by the Settings app.
+ * <p>
+ * The data returned by a provider is cached until the locale or the package changes.
+ * Providers whose data also depends on something else should return a fingerprint of
+ * it from getIndexFingerprint.
  */
 public interface Searchable {
 
@@ -27,5 +31,7 @@ public interface Searchable {
         List<SearchIndexableRaw> getRawDataToIndex(Context context);
 
         Set<String> getNonIndexableKeys(Context context);
+
+        String getIndexFingerprint(Context context);
     }
 }
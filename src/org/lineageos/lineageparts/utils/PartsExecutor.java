@@ -0,0 +1,291 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Kusuma
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.lineageparts.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Process wide scheduler for LineageParts background work.
+ *
+ * Work is split in a few lanes, each one backed by a small thread pool with its own thread
+ * priority and a bounded queue. What happens to work submitted to a full lane depends on how
+ * it was submitted:
+ * <ul>
+ * <li>{@link #execute(Lane, Runnable)} and {@link #submit} drop it and return its future
+ * already cancelled, for work that is fine to lose, like prefetching.</li>
+ * <li>{@link #executeCritical} and {@link #submitCritical} never drop it. It runs on a lane
+ * thread as soon as one is done with its current task, ahead of the queued work.</li>
+ * <li>{@link #execute(Lifecycle, Lane, Callable, Consumer)} retries it shortly after, until
+ * it gets queued or the lifecycle gets destroyed, so the callback is always delivered.</li>
+ * </ul>
+ * Idle threads are released after a while.
+ */
+public final class PartsExecutor {
+
+    private static final String TAG = PartsExecutor.class.getSimpleName();
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+    // Lifecycle tasks a full lane rejected are submitted again after this delay
+    private static final long LIFECYCLE_RETRY_DELAY_MS = 100;
+
+    public enum Lane {
+        /** Work the user is actively waiting for, like content of the screen being shown */
+        UI("ui", 2, 16, Process.THREAD_PRIORITY_DEFAULT),
+        /** Disk, database and PackageManager access */
+        IO("io", 2, 32, Process.THREAD_PRIORITY_BACKGROUND),
+        /** Work nobody is waiting for, like search indexing */
+        INDEXING("indexing", 2, 64, Process.THREAD_PRIORITY_LOWEST);
+
+        private final String mName;
+        private final int mThreads;
+        private final int mQueueSize;
+        private final int mPriority;
+
+        Lane(String name, int threads, int queueSize, int priority) {
+            mName = name;
+            mThreads = threads;
+            mQueueSize = queueSize;
+            mPriority = priority;
+        }
+    }
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static final Runnable NO_OP = () -> { };
+
+    // Executors of each lane, indexed by ordinal and created on first use
+    private static final LaneExecutor[] sExecutors = new LaneExecutor[Lane.values().length];
+
+    private PartsExecutor() {
+    }
+
+    public static Handler getMainHandler() {
+        return sMainHandler;
+    }
+
+    /**
+     * Runs a task in the given lane.
+     *
+     * @return a future that can be used to cancel the task
+     */
+    public static Future<?> execute(Lane lane, Runnable task) {
+        return enqueue(lane, new FutureTask<>(task, null));
+    }
+
+    /**
+     * Runs a task returning a value in the given lane.
+     *
+     * @return a future that can be used to wait for the result or cancel the task
+     */
+    public static <T> Future<T> submit(Lane lane, Callable<T> task) {
+        return enqueue(lane, new FutureTask<>(task));
+    }
+
+    /**
+     * Runs a task that must not be lost in the given lane, even if the lane is full.
+     *
+     * @return a future that can be used to cancel the task
+     */
+    public static Future<?> executeCritical(Lane lane, Runnable task) {
+        return enqueueCritical(lane, new FutureTask<>(task, null));
+    }
+
+    /**
+     * Runs a task returning a value that must not be lost in the given lane, even if the lane
+     * is full.
+     *
+     * @return a future that can be used to wait for the result or cancel the task
+     */
+    public static <T> Future<T> submitCritical(Lane lane, Callable<T> task) {
+        return enqueueCritical(lane, new FutureTask<>(task));
+    }
+
+    /**
+     * Runs a task in the given lane and delivers its result on the main thread.
+     *
+     * The task is cancelled when the lifecycle gets destroyed, and the result is never delivered
+     * if the task was cancelled. If the task throws, the callback receives {@code null}. If the
+     * lane is full, the task is submitted again shortly after. This method must be called from
+     * the main thread.
+     *
+     * @return a future that can be used to cancel the task
+     */
+    public static <T> Future<T> execute(Lifecycle lifecycle, Lane lane, Callable<T> task,
+            Consumer<T> callback) {
+        LifecycleTask<T> lifecycleTask = new LifecycleTask<>(lifecycle, task, callback);
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            lifecycleTask.cancel(false);
+            return lifecycleTask;
+        }
+        lifecycle.addObserver(lifecycleTask);
+        enqueueOrRetry(lane, lifecycleTask);
+        return lifecycleTask;
+    }
+
+    private static synchronized LaneExecutor getExecutor(Lane lane) {
+        LaneExecutor executor = sExecutors[lane.ordinal()];
+        if (executor == null) {
+            executor = new LaneExecutor(lane);
+            executor.allowCoreThreadTimeOut(true);
+            sExecutors[lane.ordinal()] = executor;
+        }
+        return executor;
+    }
+
+    /**
+     * Queues the task in the lane.
+     *
+     * @return whether the task was queued, false if the lane is full
+     */
+    private static boolean offer(LaneExecutor executor, FutureTask<?> task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            // Cancelled tasks stay queued until a thread picks them up, make room first
+            executor.purge();
+        }
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            return false;
+        }
+    }
+
+    private static <T extends FutureTask<?>> T enqueue(Lane lane, T task) {
+        if (!offer(getExecutor(lane), task)) {
+            Log.w(TAG, "Too much work queued in lane " + lane.mName + ", dropping task");
+            task.cancel(false);
+        }
+        return task;
+    }
+
+    private static <T extends FutureTask<?>> T enqueueCritical(Lane lane, T task) {
+        final LaneExecutor executor = getExecutor(lane);
+        if (!offer(executor, task)) {
+            Log.w(TAG, "Too much work queued in lane " + lane.mName + ", running task next");
+            executor.runNext(task);
+        }
+        return task;
+    }
+
+    private static void enqueueOrRetry(Lane lane, LifecycleTask<?> task) {
+        if (task.isCancelled() || offer(getExecutor(lane), task)) {
+            return;
+        }
+        if (DEBUG) Log.d(TAG, "Lane " + lane.mName + " is full, retrying task");
+        sMainHandler.postDelayed(() -> enqueueOrRetry(lane, task), LIFECYCLE_RETRY_DELAY_MS);
+    }
+
+    private static class LaneExecutor extends ThreadPoolExecutor {
+        // Critical tasks the queue had no room for, run before taking queued work
+        private final Queue<Runnable> mOverflow = new ConcurrentLinkedQueue<>();
+
+        LaneExecutor(Lane lane) {
+            super(lane.mThreads, lane.mThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(lane.mQueueSize), new LaneThreadFactory(lane));
+        }
+
+        void runNext(Runnable task) {
+            mOverflow.add(task);
+            try {
+                // Wakes up an idle thread, if any
+                execute(NO_OP);
+            } catch (RejectedExecutionException ex) {
+                // Still full, so every queued task drains the overflow when it's done
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            super.afterExecute(r, t);
+            Runnable task;
+            while ((task = mOverflow.poll()) != null) {
+                // Don't let the interrupt of a cancelled task leak into the next one
+                Thread.interrupted();
+                task.run();
+            }
+        }
+    }
+
+    private static class LifecycleTask<T> extends FutureTask<T>
+            implements LifecycleEventObserver {
+        private final Lifecycle mLifecycle;
+        private final Consumer<T> mCallback;
+
+        LifecycleTask(Lifecycle lifecycle, Callable<T> task, Consumer<T> callback) {
+            super(task);
+            mLifecycle = lifecycle;
+            mCallback = callback;
+        }
+
+        @Override
+        public void onStateChanged(@NonNull LifecycleOwner source,
+                @NonNull Lifecycle.Event event) {
+            if (event == Lifecycle.Event.ON_DESTROY) {
+                cancel(true);
+            }
+        }
+
+        @Override
+        protected void done() {
+            sMainHandler.post(() -> {
+                mLifecycle.removeObserver(this);
+                if (isCancelled()
+                        || mLifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+                    return;
+                }
+                T result = null;
+                try {
+                    result = get();
+                } catch (ExecutionException | InterruptedException ex) {
+                    Log.e(TAG, "Background task failed", ex);
+                }
+                mCallback.accept(result);
+            });
+        }
+    }
+
+    private static class LaneThreadFactory implements ThreadFactory {
+        private final Lane mLane;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        LaneThreadFactory(Lane lane) {
+            mLane = lane;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            final String name = "LineageParts-" + mLane.mName + "-" + mCount.incrementAndGet();
+            return new Thread(() -> {
+                Process.setThreadPriority(mLane.mPriority);
+                r.run();
+            }, name);
+        }
+    }
+}
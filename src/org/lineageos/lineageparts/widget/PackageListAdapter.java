@@ -24,6 +24,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import org.lineageos.lineageparts.R;
+import org.lineageos.lineageparts.utils.PartsExecutor;
 
 import java.util.Collections;
 import java.util.HashSet;
@@ -31,12 +32,16 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Future;
 
-public class PackageListAdapter extends BaseAdapter implements Runnable {
+public class PackageListAdapter extends BaseAdapter {
     private final PackageManager mPm;
     private final LayoutInflater mInflater;
     private final List<PackageItem> mInstalledPackages = new LinkedList<>();
     private Set<String> mExcludedPackages = new HashSet<>();
+    private Future<?> mLoadFuture;
+    // Bumped on every reload, so items of an older load still in flight are dropped
+    private int mLoadGeneration;
 
     // Packages which don't have launcher icons, but which we want to show nevertheless
     private static final String[] PACKAGE_WHITELIST = new String[] {
@@ -48,6 +53,9 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
     private final Handler mHandler = new Handler(Looper.getMainLooper()) {
         @Override
         public void handleMessage(Message msg) {
+            if (msg.arg1 != mLoadGeneration) {
+                return;
+            }
             PackageItem item = (PackageItem) msg.obj;
             int index = Collections.binarySearch(mInstalledPackages, item);
             if (index < 0) {
@@ -142,18 +150,27 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
     }
 
     private void reloadList() {
+        // Drop whatever a previous load is still about to add
+        if (mLoadFuture != null) {
+            mLoadFuture.cancel(true);
+        }
+        mHandler.removeMessages(0);
         mInstalledPackages.clear();
-        new Thread(this).start();
+        final int generation = ++mLoadGeneration;
+        mLoadFuture = PartsExecutor.executeCritical(PartsExecutor.Lane.IO,
+                () -> loadPackages(generation));
     }
 
-    @Override
-    public void run() {
+    private void loadPackages(int generation) {
         final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
         mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
         List<ResolveInfo> installedAppsInfo = mPm.queryIntentActivities(mainIntent,
                 PackageManager.ResolveInfoFlags.of(0));
 
         for (ResolveInfo info : installedAppsInfo) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
             ApplicationInfo appInfo = info.activityInfo.applicationInfo;
             if (mExcludedPackages.contains(appInfo.packageName)) {
                 continue;
@@ -162,10 +179,13 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
             final PackageItem item = new PackageItem(appInfo.packageName,
                     appInfo.loadLabel(mPm), appInfo.loadIcon(mPm));
             item.activityTitles.add(info.loadLabel(mPm));
-            mHandler.obtainMessage(0, item).sendToTarget();
+            mHandler.obtainMessage(0, generation, 0, item).sendToTarget();
         }
 
         for (String packageName : PACKAGE_WHITELIST) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
             if (mExcludedPackages.contains(packageName)) {
                 continue;
             }
@@ -174,7 +194,7 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
                         PackageManager.ApplicationInfoFlags.of(0));
                 final PackageItem item = new PackageItem(appInfo.packageName,
                         appInfo.loadLabel(mPm), appInfo.loadIcon(mPm));
-                mHandler.obtainMessage(0, item).sendToTarget();
+                mHandler.obtainMessage(0, generation, 0, item).sendToTarget();
             } catch (PackageManager.NameNotFoundException ignored) {
                 // package not present, so nothing to add -> ignore it
             }
@@ -0,0 +1,147 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Kusuma
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.gestures;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.view.KeyEvent;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.internal.os.BackgroundThread;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a macro from the way the settings store it to the actions {@link KeyHandler}
+ * runs for its gesture.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GestureMacroTest {
+
+    private static final int SCAN_CODE = 250;
+    private static final long TIMEOUT_MS = 5000;
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+    private KeyHandler mKeyHandler;
+
+    // Only touched on the main thread
+    private final List<Integer> mPerformed = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = mInstrumentation.getTargetContext();
+        mInstrumentation.runOnMainSync(() -> {
+            mKeyHandler = new KeyHandler(mContext);
+            for (int id = 1; id <= TouchscreenGestureConstants.ACTION_AMBIENT_DISPLAY; id++) {
+                final int action = id;
+                mKeyHandler.registerAction(id, () -> {
+                    mPerformed.add(action);
+                    return false;
+                });
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(() -> mKeyHandler.setActionTable(ActionTable.EMPTY));
+    }
+
+    @Test
+    public void testFormatAndParse() {
+        final int[] actions = {
+                TouchscreenGestureConstants.ACTION_FLASHLIGHT,
+                TouchscreenGestureConstants.ACTION_VOLUME_UP };
+        assertEquals("1,11", ActionTable.formatActions(actions));
+        assertArrayEquals(actions,
+                ActionTable.parseActions(ActionTable.formatActions(actions)));
+    }
+
+    @Test
+    public void testNoAction() {
+        // Stored as older versions did, so they still see the gesture as unassigned
+        assertEquals("0", ActionTable.formatActions(new int[0]));
+        assertEquals("0", ActionTable.formatActions(new int[] { 0 }));
+        assertArrayEquals(new int[] { 0 }, ActionTable.parseActions("0"));
+    }
+
+    @Test
+    public void testSingleActionOfOlderVersions() {
+        assertArrayEquals(new int[] { TouchscreenGestureConstants.ACTION_CAMERA },
+                ActionTable.parseActions("2"));
+    }
+
+    @Test
+    public void testMacroRunsInOrder() throws InterruptedException {
+        final int[] actions = {
+                TouchscreenGestureConstants.ACTION_FLASHLIGHT,
+                TouchscreenGestureConstants.ACTION_PLAY_PAUSE_MUSIC,
+                TouchscreenGestureConstants.ACTION_VOLUME_UP };
+        sendUpdate(ActionTable.formatActions(actions));
+
+        final long now = SystemClock.uptimeMillis();
+        mKeyHandler.handleKeyEvent(new KeyEvent(now, now, KeyEvent.ACTION_UP,
+                KeyEvent.KEYCODE_UNKNOWN, 0, 0, 0, SCAN_CODE));
+        mInstrumentation.waitForIdleSync();
+
+        final List<Integer> performed = new ArrayList<>();
+        mInstrumentation.runOnMainSync(() -> performed.addAll(mPerformed));
+        assertEquals(actions.length, performed.size());
+        for (int i = 0; i < actions.length; i++) {
+            assertEquals(actions[i], (int) performed.get(i));
+        }
+    }
+
+    /**
+     * Sends the mapping update the settings send, with the gesture bound to the macro.
+     */
+    private void sendUpdate(String macro) throws InterruptedException {
+        final Intent intent = new Intent(TouchscreenGestureConstants.UPDATE_PREFS_ACTION);
+        intent.putExtra(TouchscreenGestureConstants.UPDATE_EXTRA_KEYCODE_MAPPING,
+                new int[] { SCAN_CODE });
+        intent.putExtra(TouchscreenGestureConstants.UPDATE_EXTRA_ACTION_MAPPING,
+                new int[] { ActionTable.parseActions(macro)[0] });
+        intent.putExtra(TouchscreenGestureConstants.UPDATE_EXTRA_MACRO_MAPPING,
+                new String[] { macro });
+        intent.setPackage(mContext.getPackageName());
+        intent.setFlags(Intent.FLAG_RECEIVER_REGISTERED_ONLY);
+        // Ordered, so the result comes back once the handler got the update
+        final CountDownLatch delivered = new CountDownLatch(1);
+        mContext.sendOrderedBroadcast(intent, null, new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                delivered.countDown();
+            }
+        }, null, Activity.RESULT_OK, null, null);
+        assertTrue("Update not delivered",
+                delivered.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        // Let the first settings snapshot land before replacing it
+        BackgroundThread.getHandler().runWithScissors(() -> { }, TIMEOUT_MS);
+        mKeyHandler.setSettings(true /* setupCompleted */, false /* proximityOnWake */,
+                false /* hapticFeedback */, false /* dozeEnabled */);
+    }
+}
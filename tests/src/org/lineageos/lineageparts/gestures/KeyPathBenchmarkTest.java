@@ -0,0 +1,314 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Kusuma
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.gestures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.KeyEvent;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.internal.os.BackgroundThread;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays synthetic scan code streams through {@link KeyHandler#handleKeyEvent} and
+ * reports its cost, and checks the actions it dispatches while the mapping gets updated.
+ * Every action is replaced by a stub, so nothing gets launched, played or woken up, and
+ * the proximity check is disabled.
+ */
+@RunWith(AndroidJUnit4.class)
+public class KeyPathBenchmarkTest {
+
+    private static final String TAG = "KeyPathBenchmark";
+
+    private static final int MAPPED_SCAN_CODES = 16;
+    private static final int FIRST_SCAN_CODE = 250;
+    private static final int EVENTS = 100000;
+    // Each one waits for its actions to run on the main thread
+    private static final int DISPATCHED_EVENTS = 10000;
+    private static final int SAMPLES = 10000;
+    private static final long TIMEOUT_MS = 5000;
+
+    // Only actions without launch intents, so no package or role listener gets set up
+    private static final int FIRST_ACTION = TouchscreenGestureConstants.ACTION_PLAY_PAUSE_MUSIC;
+    private static final int LAST_ACTION = TouchscreenGestureConstants.ACTION_AMBIENT_DISPLAY;
+    // Actions of the remapping test, telling which table and step they belong to
+    private static final int REMAP_FIRST_ACTION = 100;
+    private static final int REMAP_ACTION_OFFSET = 100;
+    private static final int REMAP_EVENTS = 20000;
+    private static final long REMAP_INTERVAL_NS = 1000000;
+    private static final long KEY_INTERVAL_NS = 50000;
+
+    private final Random mRandom = new Random(0);
+    private final AtomicInteger mPerformed = new AtomicInteger();
+
+    private Instrumentation mInstrumentation;
+    private KeyHandler mKeyHandler;
+    private ActionTable mTable;
+
+    private volatile boolean mRemapping;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        final Context context = mInstrumentation.getTargetContext();
+        mInstrumentation.runOnMainSync(() -> {
+            mKeyHandler = new KeyHandler(context);
+            for (int id = 1; id <= LAST_ACTION; id++) {
+                mKeyHandler.registerAction(id, () -> {
+                    mPerformed.incrementAndGet();
+                    // No haptic feedback either
+                    return false;
+                });
+            }
+            mTable = createTable();
+            mKeyHandler.setActionTable(mTable);
+        });
+        // Let the first settings snapshot land before replacing it
+        BackgroundThread.getHandler().runWithScissors(() -> { }, TIMEOUT_MS);
+        mKeyHandler.setSettings(true /* setupCompleted */, false /* proximityOnWake */,
+                false /* hapticFeedback */, false /* dozeEnabled */);
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(() -> mKeyHandler.setActionTable(ActionTable.EMPTY));
+    }
+
+    @Test
+    public void testUnmappedKeysDoNotAllocate() {
+        final KeyEvent[] stream = createStream(EVENTS, false);
+        // Warm up, so the JIT is not measured
+        replay(stream);
+
+        final long allocations = countAllocations(() -> replay(stream));
+        report("Unmapped keys", stream);
+        assertEquals("Unmapped keys must not allocate", 0, allocations);
+    }
+
+    @Test
+    public void testGestureKeys() {
+        final KeyEvent[] stream = createStream(DISPATCHED_EVENTS, true);
+        final long[] latencies = new long[stream.length];
+        // Warm up, so the JIT is not measured
+        dispatch(stream, latencies);
+
+        final long start = SystemClock.elapsedRealtimeNanos();
+        final long allocations = countAllocations(() -> dispatch(stream, latencies));
+        final long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+
+        // Every event went all the way to its actions, none hit the pending gesture check
+        report("Gesture keys, up to action", latencies, stream.length, elapsed);
+        Log.i(TAG, String.format("Gesture keys: %.2f allocations/event on the key path",
+                (double) allocations / stream.length));
+        final StringWriter writer = new StringWriter();
+        mKeyHandler.dump(new PrintWriter(writer));
+        Log.i(TAG, writer.toString());
+    }
+
+    @Test
+    public void testConcurrentRemapping() throws InterruptedException {
+        final Context context = mInstrumentation.getTargetContext();
+        final List<Integer> performed = new ArrayList<>();
+        mInstrumentation.runOnMainSync(() -> {
+            for (int i = 0; i < 2 * MAPPED_SCAN_CODES; i++) {
+                final int first = REMAP_FIRST_ACTION + i;
+                final int second = REMAP_FIRST_ACTION + REMAP_ACTION_OFFSET + i;
+                // Only called on the main thread, like the actions themselves
+                mKeyHandler.registerAction(first, () -> {
+                    performed.add(first);
+                    return false;
+                });
+                mKeyHandler.registerAction(second, () -> {
+                    performed.add(second);
+                    return false;
+                });
+            }
+        });
+        final Intent[] updates = {
+                createUpdateIntent(context, 0), createUpdateIntent(context, 1) };
+
+        mRemapping = true;
+        final Thread remapper = new Thread(() -> {
+            int table = 0;
+            while (mRemapping) {
+                context.sendBroadcast(updates[table]);
+                table ^= 1;
+                LockSupport.parkNanos(REMAP_INTERVAL_NS);
+            }
+        }, "KeyPathBenchmark-remap");
+        remapper.start();
+
+        final KeyEvent[] stream = createStream(REMAP_EVENTS, true);
+        for (KeyEvent event : stream) {
+            mKeyHandler.handleKeyEvent(event);
+            // Leave the main thread some room to dispatch and remap
+            LockSupport.parkNanos(KEY_INTERVAL_NS);
+        }
+
+        mRemapping = false;
+        remapper.join();
+        mInstrumentation.waitForIdleSync();
+
+        final int[] inconsistent = new int[1];
+        final boolean[] seen = new boolean[2];
+        mInstrumentation.runOnMainSync(() -> {
+            // Every gesture runs both actions of its table's entry, in order
+            for (int i = 0; i + 1 < performed.size(); i += 2) {
+                final int first = performed.get(i) - REMAP_FIRST_ACTION;
+                final int second = performed.get(i + 1) - REMAP_FIRST_ACTION;
+                final int table = first / MAPPED_SCAN_CODES;
+                if (first < 0 || table > 1 || second != first + REMAP_ACTION_OFFSET) {
+                    inconsistent[0]++;
+                } else {
+                    seen[table] = true;
+                }
+            }
+            if (performed.size() % 2 != 0) {
+                inconsistent[0]++;
+            }
+        });
+        Log.i(TAG, "Remapping: " + performed.size() / 2 + " gestures dispatched");
+
+        assertEquals("Gestures ran actions of a partial table", 0, inconsistent[0]);
+        assertTrue("Gestures of the first table were not dispatched", seen[0]);
+        assertTrue("Gestures of the second table were not dispatched", seen[1]);
+    }
+
+    /**
+     * Returns the broadcast the settings send, for a table mapping every scan code to a
+     * two step macro. The actions tell which table and scan code they come from.
+     */
+    private static Intent createUpdateIntent(Context context, int table) {
+        final int[] scanCodes = new int[MAPPED_SCAN_CODES];
+        final String[] macros = new String[MAPPED_SCAN_CODES];
+        for (int i = 0; i < MAPPED_SCAN_CODES; i++) {
+            scanCodes[i] = FIRST_SCAN_CODE + i;
+            final int first = REMAP_FIRST_ACTION + table * MAPPED_SCAN_CODES + i;
+            macros[i] = first + "," + (first + REMAP_ACTION_OFFSET);
+        }
+        final Intent intent = new Intent(TouchscreenGestureConstants.UPDATE_PREFS_ACTION);
+        intent.putExtra(TouchscreenGestureConstants.UPDATE_EXTRA_KEYCODE_MAPPING, scanCodes);
+        intent.putExtra(TouchscreenGestureConstants.UPDATE_EXTRA_MACRO_MAPPING, macros);
+        intent.setPackage(context.getPackageName());
+        intent.setFlags(Intent.FLAG_RECEIVER_REGISTERED_ONLY);
+        return intent;
+    }
+
+    private ActionTable createTable() {
+        final int actionCount = LAST_ACTION - FIRST_ACTION + 1;
+        final int[] scanCodes = new int[MAPPED_SCAN_CODES];
+        final int[][] actions = new int[MAPPED_SCAN_CODES][];
+        for (int i = 0; i < MAPPED_SCAN_CODES; i++) {
+            scanCodes[i] = FIRST_SCAN_CODE + i;
+            final int action = FIRST_ACTION + i % actionCount;
+            // Every other gesture is a two step macro
+            actions[i] = i % 2 == 0 ? new int[] { action }
+                    : new int[] { action, FIRST_ACTION + (i + 1) % actionCount };
+        }
+        return ActionTable.create(scanCodes, actions);
+    }
+
+    private KeyEvent[] createStream(int events, boolean mapped) {
+        final KeyEvent[] stream = new KeyEvent[events];
+        final long now = SystemClock.uptimeMillis();
+        for (int i = 0; i < events; i++) {
+            final int offset = mRandom.nextInt(MAPPED_SCAN_CODES);
+            final int scanCode = mapped ? FIRST_SCAN_CODE + offset
+                    : FIRST_SCAN_CODE + MAPPED_SCAN_CODES + offset;
+            stream[i] = new KeyEvent(now, now, KeyEvent.ACTION_UP, KeyEvent.KEYCODE_UNKNOWN,
+                    0, 0, 0, scanCode);
+        }
+        return stream;
+    }
+
+    private void replay(KeyEvent[] stream) {
+        for (KeyEvent event : stream) {
+            mKeyHandler.handleKeyEvent(event);
+        }
+    }
+
+    /**
+     * Sends every event through the key path and waits for its actions to run, so the
+     * next one is not dropped as a duplicate of a pending gesture.
+     */
+    private void dispatch(KeyEvent[] stream, long[] latencies) {
+        for (int i = 0; i < stream.length; i++) {
+            final int expected = mPerformed.get()
+                    + mTable.get(stream[i].getScanCode()).length;
+            final long start = SystemClock.elapsedRealtimeNanos();
+            mKeyHandler.handleKeyEvent(stream[i]);
+            final long deadline = start + TIMEOUT_MS * 1000000L;
+            while (mPerformed.get() < expected) {
+                if (SystemClock.elapsedRealtimeNanos() > deadline) {
+                    fail("Gesture " + i + " was not dispatched");
+                }
+                Thread.onSpinWait();
+            }
+            latencies[i] = SystemClock.elapsedRealtimeNanos() - start;
+        }
+    }
+
+    private void report(String name, KeyEvent[] stream) {
+        final long start = SystemClock.elapsedRealtimeNanos();
+        replay(stream);
+        final long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+
+        final int samples = Math.min(SAMPLES, stream.length);
+        final long[] latencies = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            final long eventStart = SystemClock.elapsedRealtimeNanos();
+            mKeyHandler.handleKeyEvent(stream[i]);
+            latencies[i] = SystemClock.elapsedRealtimeNanos() - eventStart;
+        }
+        report(name, latencies, stream.length, elapsed);
+    }
+
+    private static void report(String name, long[] latencies, int events, long elapsed) {
+        final int samples = latencies.length;
+        Arrays.sort(latencies);
+        Log.i(TAG, String.format("%s: %d events, %.0f events/s", name, events,
+                events * 1e9 / Math.max(elapsed, 1)));
+        Log.i(TAG, String.format("%s per event, in ns: p50=%d p90=%d p99=%d max=%d", name,
+                latencies[samples / 2], latencies[samples * 9 / 10],
+                latencies[samples * 99 / 100], latencies[samples - 1]));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long countAllocations(Runnable task) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            task.run();
+            return Debug.getThreadAllocCount();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}